@@ -23,4 +23,9 @@ dependencies {
     compileOnly("net.md-5:bungeecord-chat:1.21-R0.4")
     implementation("org.apache.commons:commons-lang3:3.14.0")
     compileOnly("net.essentialsx:EssentialsX:2.19.0")
+
+    testImplementation("org.spigotmc:spigot:1.8.8-R0.1-SNAPSHOT")
+    testImplementation(platform("org.junit:junit-bom:5.13.4"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
 }
\ No newline at end of file
@@ -28,11 +28,12 @@
 */
 package wild.api.menu;
 
+import java.lang.reflect.Method;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import lombok.Getter;
-import lombok.Setter;
 
 import org.bukkit.ChatColor;
 import org.bukkit.Material;
@@ -44,28 +45,54 @@ import org.bukkit.inventory.meta.SkullMeta;
 
 import wild.api.WildCommons;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 public class Icon {
+	
+	// Methods that build the item: if a subclass overrides one of them, the item may be different each time
+	private static final Set<String> RENDERING_METHODS = ImmutableSet.of("createItemstack", "calculateName", "calculateLore");
+	
+	// Icons are cached only if the item is built entirely by this class
+	private static final ClassValue<Boolean> DEFAULT_RENDERING = new ClassValue<Boolean>() {
+		
+		@Override
+		protected Boolean computeValue(Class<?> type) {
+			for (Class<?> clazz = type; clazz != Icon.class; clazz = clazz.getSuperclass()) {
+				// Declared methods, also protected ones, of each subclass
+				for (Method method : clazz.getDeclaredMethods()) {
+					if (method.getParameterCount() == 0 && RENDERING_METHODS.contains(method.getName())) {
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+	};
 
 	private Material material;
 	private int amount;
 	private short dataValue;
 	
-	@Setter @Getter private String name;
+	@Getter private String name;
 	private String[] lore;
 	
-	@Setter @Getter private String skullOwner;
+	@Getter private String skullOwner;
 	
 	private Map<Enchantment, Integer> enchants;
 	
 	private boolean hideAttributes;
 	private boolean closeOnClick;
 	private ClickHandler clickHandler;
-	@Setter private MetaModifier metaModifier;
+	private MetaModifier metaModifier;
+	
+	@Getter private boolean renderCache;
+	@Getter private int version; // Incremented when the item changes
+	private ItemStack renderedItemstack; // Null if not rendered yet or changed
 	
 	public Icon() {
+		renderCache = true;
 		hideAttributes = true;
 		amount = 1;
 		enchants = Maps.newHashMap();
@@ -79,6 +106,7 @@ public class Icon {
 	public void setMaterial(Material material) {
 		if (material == Material.AIR) material = null;
 		this.material = material;
+		invalidate();
 	}
 	
 	public void setAmount(int amount) {
@@ -86,12 +114,19 @@ public class Icon {
 		else if (amount > 127) 	amount = 127;
 		
 		this.amount = amount;
+		invalidate();
 	}
 	
 	public void setDataValue(short dataValue) {
 		if (dataValue < 0) dataValue = 0;
 		
 		this.dataValue = dataValue;
+		invalidate();
+	}
+	
+	public void setName(String name) {
+		this.name = name;
+		invalidate();
 	}
 	
 	public boolean hasName() {
@@ -100,6 +135,7 @@ public class Icon {
 	
 	public void setLore(String... lore) {
 		this.lore = lore;
+		invalidate();
 	}
 	
 	public void setLore(List<String> lore) {
@@ -109,6 +145,7 @@ public class Icon {
 		} else {
 			this.lore = null;
 		}
+		invalidate();
 	}
 	
 	public boolean hasLore() {
@@ -121,6 +158,17 @@ public class Icon {
 	
 	public void addEnchantment(Enchantment ench, int level) {
 		enchants.put(ench, level);
+		invalidate();
+	}
+	
+	public void setSkullOwner(String skullOwner) {
+		this.skullOwner = skullOwner;
+		invalidate();
+	}
+	
+	public void setMetaModifier(MetaModifier metaModifier) {
+		this.metaModifier = metaModifier;
+		invalidate();
 	}
 	
 	public boolean isHideAttributes() {
@@ -129,6 +177,25 @@ public class Icon {
 
 	public void setHideAttributes(boolean hideAttributes) {
 		this.hideAttributes = hideAttributes;
+		invalidate();
+	}
+	
+	/**
+	 * If true (default) the item is built once and reused until the icon changes.
+	 * Icons with a {@link MetaModifier} are never cached, as the modifier could give a different result each time,
+	 * and neither are subclasses that override {@link #createItemstack()}, {@link #calculateName()} or {@link #calculateLore()}.
+	 */
+	public void setRenderCache(boolean renderCache) {
+		this.renderCache = renderCache;
+		invalidate();
+	}
+	
+	/**
+	 * Discards the cached item. Setters already call it, it's only needed if something else used by the icon changes.
+	 */
+	public void invalidate() {
+		version++;
+		renderedItemstack = null;
 	}
 	
 	public void setCloseOnClick(boolean closeOnClick) {
@@ -188,7 +255,35 @@ public class Icon {
 		return output;
 	}
 	
+	/**
+	 * Returns a new copy of the item, that can be modified.
+	 */
 	public ItemStack createItemstack() {
+		if (!isRenderCacheable()) {
+			return buildItemstack();
+		}
+		return render().clone();
+	}
+	
+	/**
+	 * Returns the cached item if possible, which must not be modified. Used by menus, that only copy it.
+	 */
+	ItemStack render() {
+		if (!isRenderCacheable()) {
+			return createItemstack();
+		}
+		
+		if (renderedItemstack == null) {
+			renderedItemstack = buildItemstack();
+		}
+		return renderedItemstack;
+	}
+	
+	boolean isRenderCacheable() {
+		return renderCache && metaModifier == null && DEFAULT_RENDERING.get(getClass());
+	}
+	
+	private ItemStack buildItemstack() {
 		
 		// If the material is not set, display Bedrock.
 		ItemStack itemStack = (material != null) ? new ItemStack(material, amount, dataValue) : new ItemStack(Material.BEDROCK, amount);
@@ -31,6 +31,7 @@ package wild.api.menu;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
 
 import lombok.NonNull;
 
@@ -42,9 +43,17 @@ public class IconMenu {
 	
 	Inventory inventory;
 	
+	// What the inventory currently shows, to update only the slots that changed
+	private final Icon[] renderedIcons;
+	private final int[] renderedVersions;
+	private final ItemStack[] renderedItems;
+	
 	public IconMenu(String title, int rows) {
 		this.rows = rows;
 		icons = new Icon[rows * 9];
+		renderedIcons = new Icon[icons.length];
+		renderedVersions = new int[icons.length];
+		renderedItems = new ItemStack[icons.length];
 		inventory = Bukkit.createInventory(new MenuInventoryHolder(this), icons.length, title);
 	}
 	
@@ -89,28 +98,46 @@ public class IconMenu {
 		icons = new Icon[rows * 9];
 	}
 	
+	/**
+	 * Updates only the slots whose icon was replaced or changed since the last refresh.
+	 */
 	public void refresh() {
-		inventory.clear();
 		for (int i = 0; i < icons.length; i++) {
-			if (icons[i] != null) {
-				inventory.setItem(i, icons[i].createItemstack());
-			}
+			updateSlot(i, false);
 		}
 	}
 	
 	public void refresh(@NonNull Icon icon) {
 		for (int i = 0; i < icons.length; i++) {
 			if (icons[i] == icon) {
-				inventory.setItem(i, icons[i].createItemstack());
+				updateSlot(i, true);
 			}
 		}
 	}
 	
 	public void refresh(int slot) {
-		inventory.clear(slot);
-		if (icons[slot] != null) {
-			inventory.setItem(slot, icons[slot].createItemstack());
+		updateSlot(slot, true);
+	}
+	
+	private void updateSlot(int slot, boolean force) {
+		Icon icon = icons[slot];
+		
+		if (!force && icon == renderedIcons[slot]) {
+			if (icon == null || (icon.isRenderCacheable() && icon.getVersion() == renderedVersions[slot])) {
+				return; // Same cached item
+			}
+		}
+		
+		ItemStack item = icon != null ? icon.render() : null;
+		
+		// Icons that are not cached are built every time, but sent only if different
+		if (force || (item != null ? !item.equals(renderedItems[slot]) : renderedItems[slot] != null)) {
+			inventory.setItem(slot, item);
 		}
+		
+		renderedIcons[slot] = icon;
+		renderedVersions[slot] = icon != null ? icon.getVersion() : 0;
+		renderedItems[slot] = item;
 	}
 	
 	public int getRows() {
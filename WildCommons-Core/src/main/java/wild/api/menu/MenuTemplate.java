@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package wild.api.menu;
+
+import java.util.Map;
+import java.util.UUID;
+
+import org.bukkit.entity.Player;
+
+import com.google.common.collect.Maps;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * Layout shared by many players, for menus whose content depends on the viewer.<br>
+ * Static icons are shared by all the viewers, dynamic slots are evaluated for each player when the menu is opened.
+ * Each viewer gets an {@link IconMenu}, kept only until the player closes it.
+ */
+public class MenuTemplate {
+	
+	@Getter private final String title;
+	@Getter private final int rows;
+	
+	private final Icon[] icons;
+	private final IconProvider[] providers;
+	
+	private final Map<UUID, ViewerMenu> viewerMenus = Maps.newHashMap();
+	
+	public MenuTemplate(@NonNull String title, int rows) {
+		this.title = title;
+		this.rows = rows;
+		this.icons = new Icon[rows * 9];
+		this.providers = new IconProvider[rows * 9];
+	}
+	
+	public void setIcon(int x, int y, Icon icon) {
+		setIconRaw((y - 1) * 9 + (x - 1), icon);
+	}
+	
+	public void setIconRaw(int index, Icon icon) {
+		if (index >= 0 && index < icons.length) {
+			icons[index] = icon;
+			providers[index] = null;
+		}
+	}
+	
+	public void setProvider(int x, int y, IconProvider provider) {
+		setProviderRaw((y - 1) * 9 + (x - 1), provider);
+	}
+	
+	public void setProviderRaw(int index, IconProvider provider) {
+		if (index >= 0 && index < providers.length) {
+			providers[index] = provider;
+			icons[index] = null;
+		}
+	}
+	
+	public void open(@NonNull Player player) {
+		ViewerMenu menu = viewerMenus.get(player.getUniqueId());
+		boolean alreadyOpen = menu != null && player.getOpenInventory().getTopInventory() == menu.inventory;
+		
+		if (menu == null) {
+			menu = new ViewerMenu(this, player.getUniqueId());
+			viewerMenus.put(player.getUniqueId(), menu);
+		}
+		
+		update(menu, player);
+		if (!alreadyOpen) {
+			menu.open(player);
+		}
+	}
+	
+	/**
+	 * Evaluates again the dynamic slots for the player, if the menu is open.
+	 */
+	public void refresh(@NonNull Player player) {
+		ViewerMenu menu = viewerMenus.get(player.getUniqueId());
+		if (menu != null) {
+			update(menu, player);
+		}
+	}
+	
+	public int getViewersCount() {
+		return viewerMenus.size();
+	}
+	
+	public void onClose(Player player) {
+		// Override
+	}
+	
+	private void update(ViewerMenu menu, Player player) {
+		for (int i = 0; i < icons.length; i++) {
+			menu.setIconRaw(i, providers[i] != null ? providers[i].getIcon(player) : icons[i]);
+		}
+		menu.refresh(); // Static icons are already rendered, only changed slots are updated
+	}
+	
+	
+	private static class ViewerMenu extends IconMenu {
+		
+		private final MenuTemplate template;
+		private final UUID viewer;
+		
+		private ViewerMenu(MenuTemplate template, UUID viewer) {
+			super(template.title, template.rows);
+			this.template = template;
+			this.viewer = viewer;
+		}
+		
+		@Override
+		public void onClose(Player player) {
+			template.viewerMenus.remove(viewer, this);
+			template.onClose(player);
+		}
+		
+	}
+	
+}
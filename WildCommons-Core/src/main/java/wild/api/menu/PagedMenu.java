@@ -28,30 +28,62 @@
 */
 package wild.api.menu;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
 
+import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.Material;
 import org.bukkit.Sound;
+import org.bukkit.entity.HumanEntity;
 import org.bukkit.entity.Player;
+import org.bukkit.inventory.InventoryHolder;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 import lombok.NonNull;
 import wild.api.sound.EasySound;
+import wild.core.WildCommonsPlugin;
 
+/**
+ * Pages are created only when opened, and discarded when the last viewer closes them.<br>
+ * The icons can be added directly, or loaded one page at a time from a {@link PageSource}.
+ */
 public class PagedMenu {
 	
 	private static final Sound PAGE_CHANGE_SOUND = Sound.CLICK;
+	private static final int MAX_LOADED_PAGES = 10;
+	
+	private static final Icon LOADING_ICON = new IconBuilder(Material.STAINED_GLASS_PANE).dataValue(8).name(ChatColor.GRAY + "Caricamento...").build();
+	private static final Icon LOADING_ERROR_ICON = new IconBuilder(Material.BARRIER).name(ChatColor.RED + "Errore durante il caricamento").lore(ChatColor.GRAY + "Riapri il menu per riprovare.").build();
 	
 	private final String name;
 	private final int slotsPerPage;
 	private final int totalRows;
 	
 	private List<Icon> icons;
-	private List<IconMenu> pagesMenus;
+	private final Map<Integer, PageMenu> openPages; // Only pages with viewers
+	
+	private final PageSource source;
+	private final Map<Integer, CompletableFuture<List<Icon>>> loadedPages; // Only with a source, used on the main thread
+	
+	// Shared by all the pages
+	private final Icon previousPageIcon;
+	private final Icon nextPageIcon;
+	private final Map<Integer, Icon> pageNumberIcons;
 	
 	public PagedMenu(@NonNull String name, int rows) {
+		this(name, rows, null);
+	}
+	
+	/**
+	 * The pages are loaded from the source when opened, showing placeholders in the meantime. The following page is loaded in advance.
+	 */
+	public PagedMenu(@NonNull String name, int rows, PageSource source) {
 		if (rows < 1 || rows > 5) {
 			throw new IllegalArgumentException("Rows must be between 1 and 5");
 		}
@@ -59,92 +91,228 @@ public class PagedMenu {
 		this.slotsPerPage = rows * 9;
 		this.totalRows = rows + 1;
 		this.icons = Lists.newArrayList();
-		this.pagesMenus = Lists.newArrayList();
+		this.openPages = Maps.newHashMap();
+		this.pageNumberIcons = Maps.newHashMap();
+		this.source = source;
+		this.loadedPages = new LinkedHashMap<Integer, CompletableFuture<List<Icon>>>(16, 0.75f, true) {
+			
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, CompletableFuture<List<Icon>>> eldest) {
+				return size() > MAX_LOADED_PAGES;
+			}
+		};
+		
+		this.previousPageIcon = new IconBuilder(Material.ARROW).name(ChatColor.WHITE + "Pagina precedente").clickHandler(player -> {
+			changePage(player, -1);
+		}).build();
+		this.nextPageIcon = new IconBuilder(Material.ARROW).name(ChatColor.WHITE + "Pagina successiva").clickHandler(player -> {
+			changePage(player, 1);
+		}).build();
 	}
 
 	
 	public void addIcon(@NonNull Icon icon) {
+		checkNoSource();
 		this.icons.add(icon);
 	}
 	
 	public void clearIcons() {
+		checkNoSource();
 		this.icons.clear();
 	}
 	
+	private void checkNoSource() {
+		if (source != null) {
+			throw new IllegalStateException("Icons are loaded from the page source");
+		}
+	}
+	
 	public void refresh(@NonNull Icon icon) {
-		for (IconMenu menu : pagesMenus) {
+		for (IconMenu menu : openPages.values()) {
 			menu.refresh(icon);
 		}
 	}
 	
+	/**
+	 * Updates the pages currently open, the others will show the changes when opened.
+	 * With a source, the loaded pages are discarded and loaded again.
+	 */
 	public void update() {
+		if (source != null) {
+			loadedPages.clear();
+		} else {
+			int pages = getPagesCount();
+			openPages.keySet().removeIf(page -> page >= pages);
+		}
+		
+		for (PageMenu menu : openPages.values()) {
+			fill(menu);
+			menu.refresh();
+		}
+	}
+	
+	/**
+	 * Not known in advance with a source, only the icons added directly are counted.
+	 */
+	public int getPagesCount() {
 		// Approssima per eccesso, minimo 1 pagina
 		int pages = icons.size() % slotsPerPage == 0 ? (icons.size() / slotsPerPage) : (icons.size() / slotsPerPage) + 1;
-		if (pages < 1) {
-			pages = 1;
+		return Math.max(pages, 1);
+	}
+
+	public void open(Player player) {
+		open(player, 0);
+	}
+	
+	public void open(Player player, int page) {
+		if (page < 0 || (source == null && page >= getPagesCount())) {
+			return;
+		}
+		
+		PageMenu menu = openPages.get(page);
+		if (menu == null) {
+			menu = new PageMenu(this, page);
+			fill(menu);
+			menu.refresh();
+			openPages.put(page, menu);
 		}
+		menu.open(player);
+	}
+	
+	private void fill(PageMenu menu) {
+		menu.clearIcons();
 		
-		// Aggiunge o toglie pagine in base al numero giusto
-		while (pagesMenus.size() < pages) {
-			pagesMenus.add(new IconMenu(name, totalRows));
+		boolean hasNextPage;
+		if (source != null) {
+			hasNextPage = fillFromSource(menu);
+		} else {
+			int start = menu.page * slotsPerPage;
+			int end = Math.min(icons.size(), start + slotsPerPage);
+			for (int index = start; index < end; index++) {
+				menu.setIconRaw(index - start, icons.get(index));
+			}
+			hasNextPage = menu.page < getPagesCount() - 1;
 		}
-		while (pagesMenus.size() > pages) {
-			pagesMenus.remove(pagesMenus.size() - 1);
+		
+		if (menu.page > 0 || hasNextPage) {
+			if (menu.page > 0) {
+				// Se non è il primo, visualizza la pagina precedente
+				menu.setIcon(4, totalRows, previousPageIcon);
+			}
+			if (hasNextPage) {
+				// Se non è l'ultimo, visualizza la pagina successiva
+				menu.setIcon(6, totalRows, nextPageIcon);
+			}
+			menu.setIcon(5, totalRows, pageNumberIcons.computeIfAbsent(menu.page, page -> {
+				return new IconBuilder(Material.PAPER).name(ChatColor.WHITE + "Pagina " + (page + 1)).build();
+			}));
 		}
+	}
+	
+	/**
+	 * Fills the page with the loaded icons, or with placeholders until they are loaded.
+	 * @return true if there are other icons after this page
+	 */
+	private boolean fillFromSource(PageMenu menu) {
+		CompletableFuture<List<Icon>> future = loadPage(menu.page);
 		
-		// Pulisce tutti i menu, per riutilizzarli
-		for (IconMenu menu : pagesMenus) {
-			menu.clearIcons();
+		if (!future.isDone()) {
+			for (int slot = 0; slot < slotsPerPage; slot++) {
+				menu.setIconRaw(slot, LOADING_ICON);
+			}
+			future.whenComplete((loadedIcons, error) -> {
+				if (WildCommonsPlugin.instance.isEnabled()) { // Non si possono schedulare task dopo la disattivazione
+					Bukkit.getScheduler().runTask(WildCommonsPlugin.instance, () -> onPageLoaded(menu, future));
+				}
+			});
+			return false;
 		}
 		
-		int index = 0;
-		for (Icon icon : icons) {
-			int page = index / slotsPerPage;
-			int slot = index % slotsPerPage;
-
-			pagesMenus.get(page).setIconRaw(slot, icon);
-			
-			index++;
+		if (future.isCompletedExceptionally()) {
+			loadedPages.remove(menu.page, future); // Riprova alla prossima apertura
+			menu.setIconRaw(slotsPerPage / 2, LOADING_ERROR_ICON);
+			return false;
 		}
 		
+		List<Icon> pageIcons = future.join();
+		for (int slot = 0; slot < Math.min(pageIcons.size(), slotsPerPage); slot++) {
+			menu.setIconRaw(slot, pageIcons.get(slot));
+		}
 		
-		if (pages > 1) {
-			for (int page = 0; page < pagesMenus.size(); page++) {
-				IconMenu currentPageMenu = pagesMenus.get(page);
-				
-				if (page > 0) {
-					// Se non è il primo, visualizza la pagina precedente
-					IconMenu previousPageMenu = pagesMenus.get(page - 1);
-					
-					currentPageMenu.setIcon(4, totalRows, new IconBuilder(Material.ARROW).name(ChatColor.WHITE + "Pagina precedente").clickHandler(player -> {
-						EasySound.quickPlay(player, PAGE_CHANGE_SOUND, 1.6f, 0.5f);
-						previousPageMenu.open(player);
-					}).build());
-				}
-				
-				if (page < pagesMenus.size() - 1) {
-					// Se non è l'ultimo, visualizza la pagina successiva
-					IconMenu nextPageMenu = pagesMenus.get(page + 1);
-					
-					currentPageMenu.setIcon(6, totalRows, new IconBuilder(Material.ARROW).name(ChatColor.WHITE + "Pagina successiva").clickHandler(player -> {
-						EasySound.quickPlay(player, PAGE_CHANGE_SOUND, 1.6f, 0.5f);
-						nextPageMenu.open(player);
-					}).build());
-				}
-				
-				currentPageMenu.setIcon(5, totalRows, new IconBuilder(Material.PAPER).name(ChatColor.WHITE + "Pagina " + (page + 1)).build());
+		boolean hasNextPage = pageIcons.size() > slotsPerPage;
+		if (hasNextPage) {
+			loadPage(menu.page + 1); // Probabilmente sarà la prossima aperta
+		}
+		return hasNextPage;
+	}
+	
+	private CompletableFuture<List<Icon>> loadPage(int page) {
+		CompletableFuture<List<Icon>> future = loadedPages.get(page);
+		if (future == null) {
+			// Un'icona in più per sapere se esiste la pagina successiva
+			try {
+				future = source.load(page * slotsPerPage, slotsPerPage + 1);
+			} catch (Throwable t) {
+				future = new CompletableFuture<>();
+				future.completeExceptionally(t);
 			}
+			future.whenComplete((loadedIcons, error) -> {
+				if (error != null) {
+					WildCommonsPlugin.instance.getLogger().log(Level.WARNING, "Couldn't load page " + (page + 1) + " of menu " + name, error);
+				}
+			});
+			loadedPages.put(page, future);
 		}
-
-		// Refresh di tutti i menu
-		for (IconMenu menu : pagesMenus) {
+		return future;
+	}
+	
+	private void onPageLoaded(PageMenu menu, CompletableFuture<List<Icon>> future) {
+		if (openPages.get(menu.page) == menu) {
+			fill(menu);
 			menu.refresh();
+		} else if (future.isCompletedExceptionally()) {
+			loadedPages.remove(menu.page, future); // Riprova alla prossima apertura
 		}
 	}
-
-	public void open(Player player) {
-		if (!pagesMenus.isEmpty()) {
-			pagesMenus.get(0).open(player);
+	
+	private void changePage(Player player, int offset) {
+		// Le icone di navigazione sono condivise, la pagina è quella che il giocatore sta guardando
+		InventoryHolder holder = player.getOpenInventory().getTopInventory().getHolder();
+		if (!(holder instanceof MenuInventoryHolder) || !(((MenuInventoryHolder) holder).getIconMenu() instanceof PageMenu)) {
+			return;
+		}
+		
+		PageMenu currentPage = (PageMenu) ((MenuInventoryHolder) holder).getIconMenu();
+		if (currentPage.pagedMenu == this) {
+			EasySound.quickPlay(player, PAGE_CHANGE_SOUND, 1.6f, 0.5f);
+			open(player, currentPage.page + offset);
+		}
+	}
+	
+	
+	private static class PageMenu extends IconMenu {
+		
+		private final PagedMenu pagedMenu;
+		private final int page;
+		
+		private PageMenu(PagedMenu pagedMenu, int page) {
+			super(pagedMenu.name, pagedMenu.totalRows);
+			this.pagedMenu = pagedMenu;
+			this.page = page;
+		}
+		
+		@Override
+		public void onClose(Player player) {
+			// Il giocatore che chiude è ancora tra i viewer
+			for (HumanEntity viewer : inventory.getViewers()) {
+				if (viewer != player) {
+					return;
+				}
+			}
+			pagedMenu.openPages.remove(page, this);
 		}
+		
 	}
 }
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package wild.api.mysql;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Outcome of {@link MySQL#preparedBatch(String, java.util.List, boolean)}.
+ */
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+public class BatchResult {
+
+	/**
+	 * Row count of each executed command. When inserts are rewritten as multi-row statements,
+	 * there is one value for each statement instead of one for each row.
+	 */
+	@Getter private final int[] updateCounts;
+
+	@Getter private final int rows;
+	@Getter private final int statements;
+	private final long elapsedNanos;
+
+	public long getElapsedMillis() {
+		return elapsedNanos / 1_000_000;
+	}
+
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/**
+	 * Sum of the row counts, ignoring unknown values ({@link java.sql.Statement#SUCCESS_NO_INFO}).
+	 */
+	public int getTotalUpdateCount() {
+		int total = 0;
+		for (int count : updateCounts) {
+			if (count > 0) {
+				total += count;
+			}
+		}
+		return total;
+	}
+
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package wild.api.mysql;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.Getter;
+import lombok.Setter;
+import wild.core.WildCommonsPlugin;
+
+/**
+ * Guards the connections used by {@link MySQL}, both borrowed from the pool and newly opened.<br>
+ * After consecutive failures to connect the circuit opens and every call fails immediately with {@link CircuitOpenException},
+ * without waiting for the connection timeout. When the backoff expires a single caller is allowed to try again (half open):
+ * if it gets a connection the circuit closes, otherwise it opens again with a doubled backoff, up to the maximum.
+ */
+public class CircuitBreaker {
+
+	private static final long DEFAULT_INITIAL_BACKOFF = TimeUnit.SECONDS.toMillis(1);
+	private static final long DEFAULT_MAX_BACKOFF = TimeUnit.MINUTES.toMillis(1);
+	private static final int DEFAULT_FAILURE_THRESHOLD = 2;
+
+	public enum State {
+		CLOSED, // Working normally
+		OPEN, // Database unreachable, calls fail fast
+		HALF_OPEN // A single attempt is running
+	}
+
+	@Getter private volatile State state = State.CLOSED;
+
+	@Setter @Getter private volatile long initialBackoff = DEFAULT_INITIAL_BACKOFF;
+	@Setter @Getter private volatile long maxBackoff = DEFAULT_MAX_BACKOFF;
+	@Setter @Getter private volatile int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+
+	private final String name;
+	private volatile int consecutiveFailures; // Written while holding this
+	private long currentBackoff; // Guarded by this
+	private long retryAt; // Guarded by this
+
+	private final AtomicLong rejectedCalls = new AtomicLong();
+	private final AtomicLong timesOpened = new AtomicLong();
+
+
+	CircuitBreaker(String name) {
+		this.name = name;
+	}
+
+
+	/**
+	 * Runs an attempt to get a connection, failing immediately if the circuit is open or another caller is already trying again.
+	 * If it returns normally the circuit closes. Failures to connect must be reported with {@link #recordFailure(Exception)}
+	 * by the code that opens the connections, other exceptions (for example an exhausted pool) don't open the circuit.
+	 */
+	<T> T call(Attempt<T> attempt) throws SQLException {
+		boolean trial = acquireAttempt();
+		try {
+			T result = attempt.run();
+			recordSuccess();
+			return result;
+		} finally {
+			if (trial) {
+				finishTrial();
+			}
+		}
+	}
+
+	/**
+	 * When the backoff is expired, only the first caller is let through.
+	 * @return true if the caller is the trial of the half open circuit
+	 */
+	private boolean acquireAttempt() throws SQLException {
+		if (state == State.CLOSED) {
+			return false;
+		}
+
+		synchronized (this) {
+			if (state == State.CLOSED) {
+				return false;
+			}
+			if (state == State.OPEN && System.currentTimeMillis() >= retryAt) {
+				state = State.HALF_OPEN;
+				return true;
+			}
+			throw rejected();
+		}
+	}
+
+	/**
+	 * The trial ended without success or failure to connect (for example an Error was thrown):
+	 * the circuit goes back to open, the next caller will try again.
+	 */
+	private synchronized void finishTrial() {
+		if (state == State.HALF_OPEN) {
+			state = State.OPEN;
+		}
+	}
+
+	void recordSuccess() {
+		if (state == State.CLOSED && consecutiveFailures == 0) {
+			return; // Called for every borrowed connection, without locking in the common case
+		}
+
+		synchronized (this) {
+			if (state != State.CLOSED) {
+				WildCommonsPlugin.mysqlErrorLogger.log("Database " + name + " is reachable again, circuit closed.");
+			}
+			state = State.CLOSED;
+			consecutiveFailures = 0;
+			currentBackoff = 0;
+		}
+	}
+
+	synchronized void recordFailure(Exception cause) {
+		consecutiveFailures++;
+
+		if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+			currentBackoff = currentBackoff == 0 ? initialBackoff : Math.min(currentBackoff * 2, maxBackoff);
+			retryAt = System.currentTimeMillis() + currentBackoff;
+			state = State.OPEN;
+			timesOpened.incrementAndGet();
+			WildCommonsPlugin.mysqlErrorLogger.log("Could not connect to database " + name + " (" + consecutiveFailures + " consecutive failures): " + cause
+					+ "\nCircuit opened, next attempt in " + currentBackoff + " ms.");
+		}
+	}
+
+	/**
+	 * True if connections can be opened, or a new attempt can be made.
+	 */
+	public synchronized boolean isAvailable() {
+		return state == State.CLOSED || (state == State.OPEN && System.currentTimeMillis() >= retryAt);
+	}
+
+	/**
+	 * Milliseconds until the next connection attempt is allowed, 0 if not open.
+	 */
+	public synchronized long getRetryDelay() {
+		return state == State.OPEN ? Math.max(0, retryAt - System.currentTimeMillis()) : 0;
+	}
+
+	public int getConsecutiveFailures() {
+		return consecutiveFailures;
+	}
+
+	public long getRejectedCalls() {
+		return rejectedCalls.get();
+	}
+
+	public long getTimesOpened() {
+		return timesOpened.get();
+	}
+
+	@Override
+	public String toString() {
+		return "CircuitBreaker [state=" + state + ", failures=" + getConsecutiveFailures() + ", retryDelay=" + getRetryDelay() + "ms"
+				+ ", rejected=" + getRejectedCalls() + ", opened=" + getTimesOpened() + "]";
+	}
+
+
+	private SQLException rejected() {
+		rejectedCalls.incrementAndGet();
+		return new CircuitOpenException("Database " + name + " is unavailable (circuit " + state + "), next attempt in " + getRetryDelay() + " ms");
+	}
+
+
+	interface Attempt<T> {
+
+		public T run() throws SQLException;
+
+	}
+
+
+	/**
+	 * Thrown instead of trying to connect while the circuit is open. Not logged, the failure was already logged when the circuit opened.
+	 */
+	public static class CircuitOpenException extends SQLTransientConnectionException {
+
+		private static final long serialVersionUID = 1L;
+
+		private CircuitOpenException(String message) {
+			super(message);
+		}
+
+	}
+
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package wild.api.mysql;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.collect.Lists;
+
+import lombok.Getter;
+import lombok.NonNull;
+import wild.core.WildCommonsPlugin;
+
+/**
+ * Bounded pool of connections used by {@link MySQL}.<br>
+ * Connections are opened lazily up to the maximum size, reused in LIFO order and
+ * closed when they stay idle for too long (one connection is always kept open).<br>
+ * When the pool is exhausted, connections borrowed for longer than the leak timeout (for example an {@link SQLResult}
+ * that was never closed) are logged once with the stack trace of the borrow. They are not closed: a long streaming read
+ * looks the same, so they go back to the pool only when released.
+ */
+public class ConnectionPool {
+
+	/**
+	 * Idle connections used more recently than this are not validated again when borrowed.
+	 */
+	private static final long VALIDATION_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+
+	private final ConnectionFactory connectionFactory;
+	@Getter private final int maxSize;
+	@Getter private final long borrowTimeout;
+	@Getter private final long idleTimeout;
+	@Getter private final int statementCacheSize;
+	@Getter private final long leakTimeout;
+
+	private final Semaphore permits;
+	private final Deque<PooledConnection> idleConnections; // Most recently used first
+	private final Set<PooledConnection> borrowedConnections = ConcurrentHashMap.newKeySet();
+	private volatile boolean closed;
+
+	private final AtomicInteger activeConnections = new AtomicInteger();
+	private final AtomicInteger openConnections = new AtomicInteger();
+	private final AtomicLong totalBorrows = new AtomicLong();
+	private final AtomicLong totalCreated = new AtomicLong();
+	private final AtomicLong totalDestroyed = new AtomicLong();
+	private final AtomicLong totalTimeouts = new AtomicLong();
+	private final AtomicLong totalLeaks = new AtomicLong();
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+	private final AtomicLong statementCacheHits = new AtomicLong();
+	private final AtomicLong statementCacheMisses = new AtomicLong();
+
+
+	/**
+	 * @param maxSize maximum amount of open connections
+	 * @param borrowTimeout milliseconds to wait for a free connection before failing
+	 * @param idleTimeout milliseconds after which an unused connection is closed
+	 * @param statementCacheSize maximum amount of prepared statements cached for each connection, 0 to disable
+	 * @param leakTimeout milliseconds after which a borrowed connection is reported as leaked if the pool is exhausted, 0 to disable
+	 */
+	ConnectionPool(@NonNull ConnectionFactory connectionFactory, int maxSize, long borrowTimeout, long idleTimeout, int statementCacheSize, long leakTimeout) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Pool size must be at least 1");
+		}
+		if (statementCacheSize < 0) {
+			throw new IllegalArgumentException("Statement cache size cannot be negative");
+		}
+		this.connectionFactory = connectionFactory;
+		this.maxSize = maxSize;
+		this.borrowTimeout = borrowTimeout;
+		this.idleTimeout = idleTimeout;
+		this.statementCacheSize = statementCacheSize;
+		this.leakTimeout = leakTimeout;
+		this.permits = new Semaphore(maxSize, true);
+		this.idleConnections = new ArrayDeque<>(maxSize);
+	}
+
+
+	/**
+	 * Takes a connection from the pool, opening a new one if none is idle.
+	 * Waits at most {@link #getBorrowTimeout()} milliseconds if the pool is exhausted.
+	 */
+	PooledConnection borrow() throws SQLException {
+		checkNotClosed();
+
+		long waitStart = System.nanoTime();
+		try {
+			if (!permits.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+				reportLeakedConnections();
+			}
+			if (!permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS)) {
+				totalTimeouts.incrementAndGet();
+				throw new SQLTimeoutException("Timed out after " + borrowTimeout + "ms while waiting for a free connection (pool size: " + maxSize + ")");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a free connection", e);
+		}
+		totalWaitNanos.addAndGet(System.nanoTime() - waitStart);
+
+		try {
+			checkNotClosed();
+			PooledConnection pooledConnection;
+
+			while ((pooledConnection = pollIdle()) != null) {
+				if (validate(pooledConnection)) {
+					break;
+				}
+				destroy(pooledConnection);
+			}
+
+			if (pooledConnection == null) {
+				pooledConnection = new PooledConnection(this, connectionFactory.create(), statementCacheSize, statementCacheHits, statementCacheMisses);
+				openConnections.incrementAndGet();
+				totalCreated.incrementAndGet();
+			}
+
+			// The stack trace is only needed to report leaks
+			pooledConnection.lend(leakTimeout > 0 ? new Exception("Connection borrowed here") : null);
+			borrowedConnections.add(pooledConnection);
+			activeConnections.incrementAndGet();
+			totalBorrows.incrementAndGet();
+			return pooledConnection;
+
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Gives back a connection previously borrowed.
+	 *
+	 * @param broken if true the connection is closed instead of being reused
+	 */
+	void release(@NonNull PooledConnection pooledConnection, boolean broken) {
+		if (!borrowedConnections.remove(pooledConnection)) {
+			return; // Already released
+		}
+		activeConnections.decrementAndGet();
+
+		try {
+			if (broken || closed) {
+				destroy(pooledConnection);
+				return;
+			}
+
+			pooledConnection.touch();
+			List<PooledConnection> evicted = null;
+
+			synchronized (idleConnections) {
+				idleConnections.addFirst(pooledConnection);
+
+				// The least recently used connections are at the end of the queue
+				long now = System.currentTimeMillis();
+				while (idleConnections.size() > 1 && idleConnections.getLast().isIdleFor(now, idleTimeout)) {
+					if (evicted == null) {
+						evicted = Lists.newArrayList();
+					}
+					evicted.add(idleConnections.removeLast());
+				}
+			}
+
+			if (evicted != null) {
+				for (PooledConnection idle : evicted) {
+					destroy(idle);
+				}
+			}
+		} finally {
+			permits.release();
+		}
+	}
+
+	/**
+	 * Closes all the idle connections. Connections currently in use are closed when released.
+	 */
+	void close() {
+		closed = true;
+		List<PooledConnection> idle;
+
+		synchronized (idleConnections) {
+			idle = Lists.newArrayList(idleConnections);
+			idleConnections.clear();
+		}
+
+		for (PooledConnection pooledConnection : idle) {
+			destroy(pooledConnection);
+		}
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	public int getActiveConnections() {
+		return activeConnections.get();
+	}
+
+	public int getOpenConnections() {
+		return openConnections.get();
+	}
+
+	public int getIdleConnections() {
+		synchronized (idleConnections) {
+			return idleConnections.size();
+		}
+	}
+
+	public long getTotalBorrows() {
+		return totalBorrows.get();
+	}
+
+	public long getTotalCreated() {
+		return totalCreated.get();
+	}
+
+	public long getTotalDestroyed() {
+		return totalDestroyed.get();
+	}
+
+	public long getTotalTimeouts() {
+		return totalTimeouts.get();
+	}
+
+	public long getTotalLeaks() {
+		return totalLeaks.get();
+	}
+
+	public double getAverageWaitMillis() {
+		long borrows = totalBorrows.get();
+		return borrows > 0 ? totalWaitNanos.get() / 1_000_000.0 / borrows : 0.0;
+	}
+
+	public long getStatementCacheHits() {
+		return statementCacheHits.get();
+	}
+
+	public long getStatementCacheMisses() {
+		return statementCacheMisses.get();
+	}
+
+	@Override
+	public String toString() {
+		return "ConnectionPool [open=" + getOpenConnections() + "/" + maxSize + ", active=" + getActiveConnections() + ", idle=" + getIdleConnections()
+				+ ", borrows=" + getTotalBorrows() + ", created=" + getTotalCreated() + ", destroyed=" + getTotalDestroyed()
+				+ ", timeouts=" + getTotalTimeouts() + ", leaks=" + getTotalLeaks() + ", avgWait=" + String.format("%.2f", getAverageWaitMillis()) + "ms"
+				+ ", statementCache=" + getStatementCacheHits() + " hits/" + getStatementCacheMisses() + " misses]";
+	}
+
+
+	private PooledConnection pollIdle() {
+		synchronized (idleConnections) {
+			return idleConnections.pollFirst();
+		}
+	}
+
+	/**
+	 * Logs the connections borrowed for longer than the leak timeout, once for each borrow.
+	 * They are left to their owner, closing them would also break legitimate long reads.
+	 */
+	private void reportLeakedConnections() {
+		if (leakTimeout <= 0) {
+			return;
+		}
+
+		long now = System.currentTimeMillis();
+		for (PooledConnection pooledConnection : borrowedConnections) {
+			if (pooledConnection.isBorrowedFor(now, leakTimeout) && pooledConnection.markLeakReported()) {
+				totalLeaks.incrementAndGet();
+				WildCommonsPlugin.mysqlErrorLogger.log("Connection leak: a connection was not given back after " + (now - pooledConnection.getBorrowedAt())
+						+ "ms (probably an SQLResult never closed), it stays out of the pool until released.", pooledConnection.getBorrowStack());
+			}
+		}
+	}
+
+	private boolean validate(PooledConnection pooledConnection) {
+		if (pooledConnection.isIdleFor(System.currentTimeMillis(), VALIDATION_INTERVAL)) {
+			return MySQL.isConnectionValid(pooledConnection.getConnection());
+		}
+
+		try {
+			return !pooledConnection.getConnection().isClosed();
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private void destroy(PooledConnection pooledConnection) {
+		pooledConnection.close();
+		openConnections.decrementAndGet();
+		totalDestroyed.incrementAndGet();
+	}
+
+	private void checkNotClosed() throws SQLException {
+		if (closed) {
+			throw new SQLException("Connection pool was closed");
+		}
+	}
+
+
+	interface ConnectionFactory {
+
+		public Connection create() throws SQLException;
+
+	}
+
+}
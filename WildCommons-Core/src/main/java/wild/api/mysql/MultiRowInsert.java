@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package wild.api.mysql;
+
+import lombok.Getter;
+
+/**
+ * Splits an "INSERT ... VALUES (?, ?) ..." statement, to repeat the values group for multiple rows.
+ */
+class MultiRowInsert {
+
+	private final String head;
+	private final String valuesGroup;
+	private final String tail;
+	@Getter private final int placeholdersPerRow;
+
+	private MultiRowInsert(String head, String valuesGroup, String tail, int placeholdersPerRow) {
+		this.head = head;
+		this.valuesGroup = valuesGroup;
+		this.tail = tail;
+		this.placeholdersPerRow = placeholdersPerRow;
+	}
+
+	/**
+	 * Returns null if the statement is not an INSERT (or REPLACE) with a single values group,
+	 * or if there are placeholders outside the values group.
+	 */
+	static MultiRowInsert parse(String sql) {
+		String trimmed = sql.trim();
+		if (!startsWithIgnoreCase(trimmed, "INSERT") && !startsWithIgnoreCase(trimmed, "REPLACE")) {
+			return null;
+		}
+
+		int valuesIndex = indexOfKeyword(trimmed, "VALUES");
+		if (valuesIndex < 0) {
+			return null;
+		}
+
+		int groupStart = valuesIndex + "VALUES".length();
+		while (groupStart < trimmed.length() && Character.isWhitespace(trimmed.charAt(groupStart))) {
+			groupStart++;
+		}
+		if (groupStart >= trimmed.length() || trimmed.charAt(groupStart) != '(') {
+			return null;
+		}
+
+		int groupEnd = findClosingParenthesis(trimmed, groupStart);
+		if (groupEnd < 0) {
+			return null;
+		}
+
+		String head = trimmed.substring(0, groupStart);
+		String valuesGroup = trimmed.substring(groupStart, groupEnd + 1);
+		String tail = trimmed.substring(groupEnd + 1);
+
+		if (head.indexOf('?') >= 0 || tail.indexOf('?') >= 0 || tail.trim().startsWith(",")) {
+			return null;
+		}
+
+		int placeholders = 0;
+		for (int i = 0; i < valuesGroup.length(); i++) {
+			if (valuesGroup.charAt(i) == '?') {
+				placeholders++;
+			}
+		}
+		if (placeholders == 0) {
+			return null;
+		}
+
+		return new MultiRowInsert(head, valuesGroup, tail, placeholders);
+	}
+
+	/**
+	 * Builds the statement with the values group repeated for the given amount of rows.
+	 */
+	String build(int rows) {
+		StringBuilder sql = new StringBuilder(head.length() + (valuesGroup.length() + 1) * rows + tail.length());
+		sql.append(head);
+		for (int i = 0; i < rows; i++) {
+			if (i > 0) {
+				sql.append(',');
+			}
+			sql.append(valuesGroup);
+		}
+		sql.append(tail);
+		return sql.toString();
+	}
+
+	private static boolean startsWithIgnoreCase(String s, String prefix) {
+		return s.regionMatches(true, 0, prefix, 0, prefix.length());
+	}
+
+	private static int indexOfKeyword(String sql, String keyword) {
+		char quote = 0;
+
+		for (int i = 0; i <= sql.length() - keyword.length(); i++) {
+			char c = sql.charAt(i);
+
+			if (quote != 0) {
+				if (c == '\\') {
+					i++;
+				} else if (c == quote) {
+					quote = 0;
+				}
+			} else if (c == '\'' || c == '"' || c == '`') {
+				quote = c;
+			} else if (sql.regionMatches(true, i, keyword, 0, keyword.length())
+					&& (i == 0 || !isIdentifierPart(sql.charAt(i - 1)))
+					&& (i + keyword.length() == sql.length() || !isIdentifierPart(sql.charAt(i + keyword.length())))) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Unquoted identifiers can also contain _ and $, like in Java.
+	 */
+	private static boolean isIdentifierPart(char c) {
+		return Character.isJavaIdentifierPart(c);
+	}
+
+	private static int findClosingParenthesis(String sql, int openIndex) {
+		int depth = 0;
+		char quote = 0;
+
+		for (int i = openIndex; i < sql.length(); i++) {
+			char c = sql.charAt(i);
+
+			if (quote != 0) {
+				if (c == '\\') {
+					i++;
+				} else if (c == quote) {
+					quote = 0;
+				}
+			} else if (c == '\'' || c == '"' || c == '`') {
+				quote = c;
+			} else if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				depth--;
+				if (depth == 0) {
+					return i;
+				}
+			}
+		}
+
+		return -1;
+	}
+
+}
@@ -34,17 +34,51 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
+import com.google.common.collect.Lists;
+
+import wild.api.mysql.CircuitBreaker.CircuitOpenException;
+import wild.api.mysql.QueryStats.Execution;
+import wild.api.mysql.StatementCache.CachedStatement;
 import wild.core.WildCommonsPlugin;
 
 public class MySQL {
 	
 	private static final int TIMEOUT = 8;
+	private static final int VALIDATION_TIMEOUT = 2; // Seconds, a working connection answers much sooner
+	
+	private static final int DEFAULT_POOL_SIZE = 4;
+	private static final long DEFAULT_BORROW_TIMEOUT = TimeUnit.SECONDS.toMillis(TIMEOUT);
+	private static final long DEFAULT_IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(10);
+	private static final long DEFAULT_LEAK_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+	private static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+	private static final int DEFAULT_ASYNC_QUEUE_CAPACITY = 1000;
+	private static final int DEFAULT_MAX_ROWS_PER_INSERT = 500;
+	private static final int MAX_PLACEHOLDERS = 65535; // Limite di MySQL per un prepared statement
+	private static final long DEFAULT_SLOW_QUERY_THRESHOLD = 1000;
+	
+	// Connected instances, weak so that objects never closed are not retained
+	private static final Set<MySQL> activeInstances = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+	
+	private Connection connection;
+	@Getter private volatile ConnectionPool pool;
+	private MySQLExecutor asyncExecutor;
+	@Getter private volatile QueryCache queryCache; // Null if disabled
+	@Getter private final QueryStats stats = new QueryStats(DEFAULT_SLOW_QUERY_THRESHOLD);
+	@Getter private final CircuitBreaker circuitBreaker; // Backoff settings can be changed here
 	
-	@Getter	private Connection connection;
+	private final Object connectLock = new Object();
+	private CompletableFuture<Void> pendingConnect; // Guarded by connectLock
 
 	@Setter @Getter private String host;
 	@Setter @Getter private int port;
@@ -52,6 +86,21 @@ public class MySQL {
 	@Setter @Getter private String user;
 	@Setter @Getter private String password;
 	
+	// Pool settings, applied on the next call to connect()
+	@Setter @Getter private int poolSize = DEFAULT_POOL_SIZE;
+	@Setter @Getter private long borrowTimeout = DEFAULT_BORROW_TIMEOUT;
+	@Setter @Getter private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+	@Setter @Getter private int statementCacheSize = DEFAULT_STATEMENT_CACHE_SIZE; // For each connection, 0 to disable
+	@Setter @Getter private long leakTimeout = DEFAULT_LEAK_TIMEOUT; // Connections not given back are logged as leaks after this, 0 to disable
+	
+	// Async executor settings, applied when the executor is created (first async call)
+	@Setter @Getter private int asyncThreads = DEFAULT_POOL_SIZE;
+	@Setter @Getter private int asyncQueueCapacity = DEFAULT_ASYNC_QUEUE_CAPACITY;
+	@Setter @Getter private boolean virtualThreads;
+	
+	// Maximum rows in a single multi-row insert, when batches are rewritten
+	@Setter @Getter private int maxRowsPerInsert = DEFAULT_MAX_ROWS_PER_INSERT;
+	
 	
 	/**
 	 * Instantiate the object, doesn't connect yet.
@@ -62,49 +111,160 @@ public class MySQL {
 		this.database = database;
 		this.user = user;
 		this.password = password;
+		this.circuitBreaker = new CircuitBreaker(database);
 	}
 
 	
 	/**
-	 * Connects to the database.
+	 * Connects to the database, creating a new connection pool.
+	 * If a pool already exists, it's replaced and closed.<br>
+	 * If another thread is already connecting, waits for its outcome instead of connecting again.
+	 * Fails immediately with {@link CircuitOpenException} while the database is considered unreachable (see {@link #getCircuitBreaker()}).
 	 */
 	public void connect() throws SQLException {
+		CompletableFuture<Void> connectFuture;
+		boolean owner = false;
+		
+		synchronized (connectLock) {
+			if (pendingConnect == null) {
+				pendingConnect = new CompletableFuture<>();
+				owner = true;
+			}
+			connectFuture = pendingConnect;
+		}
+		
+		if (!owner) {
+			try {
+				connectFuture.get();
+				return;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SQLException("Interrupted while waiting for connection", e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof SQLException) {
+					throw (SQLException) e.getCause();
+				}
+				throw new SQLException("Connection failed", e.getCause());
+			}
+		}
+		
+		try {
+			createPool();
+			connectFuture.complete(null);
+		} catch (SQLException | RuntimeException e) {
+			connectFuture.completeExceptionally(e);
+			throw e;
+		} finally {
+			synchronized (connectLock) {
+				pendingConnect = null;
+			}
+		}
+	}
+	
+	private void createPool() throws SQLException {
 		try {
 			Class.forName("com.mysql.jdbc.Driver");
 		} catch (ClassNotFoundException e) {
 			throw new SQLException("Could not load driver class com.mysql.jdbc.Driver", e);
 		}
-
-        connection = DriverManager.getConnection(
-        		"jdbc:mysql://" + host + ":" + port + "/" + database +							// URI
-        		"?useSSL=false",																// Disable warning
-//        		"&connectTimeout=" + (TIMEOUT * 1000) + "&socketTimeout=" + (TIMEOUT * 1000), 	// Query
-        		user, password); 																// Authentication
+		
+		ConnectionPool newPool = new ConnectionPool(this::openConnection, poolSize, borrowTimeout, idleTimeout, statementCacheSize, leakTimeout);
+		
+		// Opens the first connection immediately, to fail here if the database is not reachable
+		circuitBreaker.call(newPool::borrow).release(false);
+		
+		ConnectionPool oldPool = pool;
+		pool = newPool;
+		if (oldPool != null) {
+			oldPool.close();
+		}
+		activeInstances.add(this);
+	}
+	
+	
+	/**
+	 * Returns a separate connection, opened lazily on the first call and kept until {@link #close()}.
+	 * It's not part of the pool and no method of this class uses it, so it doesn't see their transactions
+	 * and it's not covered by the circuit breaker after being opened.
+	 * It's null if connect() was not called or the connection failed.
+	 *
+	 * @deprecated use the query methods, which borrow a connection from the pool
+	 */
+	@Deprecated
+	public synchronized Connection getConnection() {
+		try {
+			if (pool != null && (connection == null || connection.isClosed())) {
+				connection = circuitBreaker.call(this::openConnection);
+			}
+		} catch (SQLException e) {
+			WildCommonsPlugin.mysqlErrorLogger.log("MySQL error while opening dedicated connection: " + e.toString());
+			connection = null;
+		}
+		return connection;
 	}
     
     
 	/**
-	 * Closes the active connection.
+	 * Closes the connection pool and the dedicated connection, after the pending async tasks are completed.
 	 */
     public void close() {
-        if (connection != null) {
-            try {
-                connection.close();
-            }
-            catch (SQLException ex) { }
-        }
+    	activeInstances.remove(this);
+    	
+    	synchronized (this) {
+    		if (asyncExecutor != null) {
+    			asyncExecutor.shutdown();
+    			asyncExecutor = null;
+    		}
+    	}
+    	
+    	if (pool != null) {
+    		pool.close();
+    	}
+    	
+    	synchronized (this) {
+	        if (connection != null) {
+	            try {
+	                connection.close();
+	            }
+	            catch (SQLException ex) { }
+	        }
+    	}
     }
     
     /**
      *  Checks if the connection is still valid. Useful for refreshing.
+     *  Returns false immediately while the database is considered unreachable.
      */
     public boolean isConnectionValid() {
+    	ConnectionPool pool = this.pool;
+    	if (pool == null || pool.isClosed() || !circuitBreaker.isAvailable()) {
+    		return false;
+    	}
+    	
+    	try {
+    		PooledConnection pooledConnection = circuitBreaker.call(pool::borrow);
+    		boolean valid = isConnectionValid(pooledConnection.getConnection());
+    		pooledConnection.release(!valid);
+    		return valid;
+    	} catch (SQLException e) {
+    		return false;
+    	}
+    }
+    
+    /**
+     * State of the circuit breaker: OPEN while the database is unreachable and calls fail fast.
+     */
+    public CircuitBreaker.State getHealthState() {
+    	return circuitBreaker.getState();
+    }
+    
+    static boolean isConnectionValid(Connection connection) {
         if (connection == null) {
         	return false;
         }
         
         try {
-			return connection.isValid(TIMEOUT);
+			return connection.isValid(VALIDATION_TIMEOUT);
 		} catch (SQLException e) {
 			return false;
 		}
@@ -113,129 +273,408 @@ public class MySQL {
     
     
     /**
-     * Prepares a query.
+     * Prepares a query.<br>
+     * The result holds a pooled connection until it's closed, always close it (for example with try-with-resources).
+     * Connections not given back within {@link #getLeakTimeout()} are logged as leaks when the pool runs out of connections.
      */
     public SQLResult preparedQuery(@NonNull String sql, Object... parameters) throws SQLException {
+    	PooledConnection pooledConnection = null;
+    	CachedStatement statement = null;
+    	Execution execution = stats.start(sql);
+    	
+    	try {
+    		pooledConnection = borrowConnection();
+    		statement = prepareWithParameters(pooledConnection, sql, false, parameters);
+    		ResultSet resultSet = statement.getStatement().executeQuery();
+    		execution.executed();
+    		return new SQLResult(statement.getStatement(), resultSet, releaseHandler(pooledConnection, statement), execution);
+    		
+    	} catch (SQLException e) {
+    		// statement va chiuso solo in caso di errore, altrimenti deve chiuderlo l'utente
+	    	handleSQLException(pooledConnection, statement, sql, e);
+	    	execution.finish(0, true);
+			throw e;
+		}
+    }
+    
+    
+    /**
+     * Prepares a query whose rows are streamed from the server while reading, instead of being loaded in memory all at once.
+     * Useful for large scans together with {@link SQLResult#forEach(RowConsumer)} or {@link SQLResult#stream(RowMapper)}.<br>
+     * The connection is busy until the result is closed, so read the rows without delay and always close it.
+     */
+    public SQLResult preparedStreamingQuery(@NonNull String sql, Object... parameters) throws SQLException {
+    	PooledConnection pooledConnection = null;
     	PreparedStatement statement = null;
+    	Execution execution = stats.start(sql);
     	
     	try {
-    		checkNullConnection();
-    		statement = prepareWithParameters(connection, sql, false, parameters);
+    		pooledConnection = borrowConnection();
+    		checkParametersAmount(StatementCache.countOccurrences(sql, '?'), parameters);
+    		
+    		// Not cached, the fetch size would remain on the statement
+    		statement = pooledConnection.getConnection().prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+    		statement.setFetchSize(Integer.MIN_VALUE); // Tells the driver to stream rows one by one
+    		
+    		if (parameters != null) {
+    			int index = 1;
+    			for (Object o : parameters) {
+    				setParameter(statement, index, o);
+    				index++;
+    			}
+    		}
+    		
     		ResultSet resultSet = statement.executeQuery();
-    		return new SQLResult(statement, resultSet);
+    		execution.executed();
+    		return new SQLResult(statement, resultSet, releaseHandler(pooledConnection, statement), execution);
     		
     	} catch (SQLException e) {
-    		// statement va chiuso solo in caso di errore, altrimenti deve chiuderlo l'utente
-	    	handleSQLException(statement, sql, e);
+	    	handleSQLException(pooledConnection, statement, sql, e);
+	    	execution.finish(0, true);
 			throw e;
 		}
     }
     
     
+    /**
+     * Executes a prepared query and maps each row, returning the cached list if the same query was already executed
+     * with the same parameters and mapper. The returned list is shared and cannot be modified.<br>
+     * Mappers are the same if equal, lambdas only to themselves: keep the mapper in a constant to share the results,
+     * a lambda that captures variables is a new mapper every time and never finds the cached results.<br>
+     * Results are cached only if {@link #enableQueryCache(long, int)} was called, and they are invalidated by the writes
+     * executed through this object on the tables in the FROM and JOIN clauses. Writes made by other means are seen only after the TTL.
+     */
+    public <T> List<T> cachedQuery(@NonNull String sql, @NonNull RowMapper<T> rowMapper, Object... parameters) throws SQLException {
+    	QueryCache queryCache = this.queryCache;
+    	if (queryCache == null) {
+    		return preparedQuery(sql, parameters).toList(rowMapper);
+    	}
+    	
+    	Set<String> tables = QueryCache.extractReadTables(sql);
+    	return queryCache.getOrLoad(new QueryCache.CacheKey(sql, rowMapper, parameters), tables, () -> preparedQuery(sql, parameters).toList(rowMapper));
+    }
+    
+    
+    /**
+     * Enables the cache used by {@link #cachedQuery(String, RowMapper, Object...)}, replacing the existing one.
+     * @param ttl milliseconds after which a cached result is read again from the database
+     * @param maxEntries maximum amount of cached results, the least recently used are removed first
+     */
+    public void enableQueryCache(long ttl, int maxEntries) {
+    	queryCache = new QueryCache(ttl, maxEntries);
+    }
+    
+    
+    public void disableQueryCache() {
+    	queryCache = null;
+    }
+    
+    
     /**
      * Prepares an update.
      */
     public int preparedUpdate(@NonNull String sql, Object... parameters) throws SQLException {
+    	PooledConnection pooledConnection = null;
+    	Execution execution = stats.start(sql);
+    	
     	try {
-    		checkNullConnection();
-    		PreparedStatement statement = prepareWithParameters(connection, sql, false, parameters);
+    		pooledConnection = borrowConnection();
+    		CachedStatement statement = prepareWithParameters(pooledConnection, sql, false, parameters);
+    		int rowCount;
     		try {
-    			int rowCount = statement.executeUpdate();
-    			return rowCount;
-    		} finally {
-    			statement.close(); // Qui va sempre chiuso
+    			rowCount = statement.getStatement().executeUpdate();
+    		} catch (SQLException e) {
+    			statement.close();
+    			throw e;
     		}
+    		statement.release(); // Torna nella cache, pronto per essere riutilizzato
+    		execution.finish(rowCount, false);
+    		return rowCount;
 
     	} catch (SQLException e) {
-	    	handleSQLException(null, sql, e);
+	    	handleSQLException(pooledConnection, null, sql, e);
+	    	pooledConnection = null;
+	    	execution.finish(0, true);
 			throw e;
+		} finally {
+			if (pooledConnection != null) {
+				pooledConnection.release(false);
+			}
+			invalidateQueryCache(sql);
 		}
     }
     
     
     /**
      * Prepares an update and returns auto generated keys.
+     * The result holds a pooled connection until it's closed, always close it.
      */
     public SQLResult preparedUpdateAndKeys(@NonNull String sql, Object... parameters) throws SQLException {
-    	PreparedStatement statement = null;
+    	PooledConnection pooledConnection = null;
+    	CachedStatement statement = null;
+    	Execution execution = stats.start(sql);
     	
     	try {
-    		checkNullConnection();
-    		statement = prepareWithParameters(connection, sql, true, parameters);
-    		statement.executeUpdate();
-    		ResultSet resultSet = statement.getGeneratedKeys();
-    		return new SQLResult(statement, resultSet);
+    		pooledConnection = borrowConnection();
+    		statement = prepareWithParameters(pooledConnection, sql, true, parameters);
+    		statement.getStatement().executeUpdate();
+    		execution.executed();
+    		ResultSet resultSet = statement.getStatement().getGeneratedKeys();
+    		return new SQLResult(statement.getStatement(), resultSet, releaseHandler(pooledConnection, statement), execution);
     		
     	} catch (SQLException e) {
-	    	handleSQLException(statement, sql, e);
+	    	handleSQLException(pooledConnection, statement, sql, e);
+	    	execution.finish(0, true);
 			throw e;
+		} finally {
+			invalidateQueryCache(sql);
 		}
     }
     
 	
+	/**
+	 * Executes the same prepared statement once for each array of parameters, in a single transaction.
+	 * @see #preparedBatch(String, List, boolean)
+	 */
+	public BatchResult preparedBatch(@NonNull String sql, @NonNull List<Object[]> parametersList) throws SQLException {
+		return preparedBatch(sql, parametersList, false);
+	}
+	
+	
+	/**
+	 * Executes the same prepared statement once for each array of parameters, in a single transaction.<br>
+	 * If rewriteInserts is true and the statement is an "INSERT ... VALUES (...)", the rows are sent as multi-row inserts
+	 * of at most {@link #getMaxRowsPerInsert()} rows each, otherwise addBatch()/executeBatch() is used.
+	 * Only the statement with the maximum amount of rows is cached, the last partial one is prepared each time.
+	 */
+	public BatchResult preparedBatch(@NonNull String sql, @NonNull List<Object[]> parametersList, boolean rewriteInserts) throws SQLException {
+		long start = System.nanoTime();
+		
+		if (parametersList.isEmpty()) {
+			return new BatchResult(new int[0], 0, 0, 0);
+		}
+		
+		MultiRowInsert multiRowInsert = rewriteInserts ? MultiRowInsert.parse(sql) : null;
+		PooledConnection pooledConnection = null;
+		CachedStatement statement = null;
+		Execution execution = stats.start(sql);
+		
+		try {
+			pooledConnection = borrowConnection();
+			Connection connection = pooledConnection.getConnection();
+			boolean autoCommit = connection.getAutoCommit();
+			connection.setAutoCommit(false);
+			
+			int[] updateCounts;
+			try {
+				if (multiRowInsert != null) {
+					int rowsPerStatement = Math.max(1, Math.min(maxRowsPerInsert, MAX_PLACEHOLDERS / multiRowInsert.getPlaceholdersPerRow()));
+					int statementsAmount = (parametersList.size() + rowsPerStatement - 1) / rowsPerStatement;
+					updateCounts = new int[statementsAmount];
+					String fullChunkSql = multiRowInsert.build(rowsPerStatement);
+					
+					for (int i = 0; i < statementsAmount; i++) {
+						List<Object[]> rows = parametersList.subList(i * rowsPerStatement, Math.min((i + 1) * rowsPerStatement, parametersList.size()));
+						
+						if (rows.size() == rowsPerStatement) {
+							statement = pooledConnection.getStatementCache().prepare(fullChunkSql, false);
+							updateCounts[i] = executeMultiRowInsert(statement.getStatement(), multiRowInsert, rows);
+							statement.release();
+							statement = null;
+						} else {
+							// Non in cache: un'istruzione per ogni possibile numero di righe rimuoverebbe quelle usate spesso
+							try (PreparedStatement tailStatement = connection.prepareStatement(multiRowInsert.build(rows.size()))) {
+								updateCounts[i] = executeMultiRowInsert(tailStatement, multiRowInsert, rows);
+							}
+						}
+					}
+					
+				} else {
+					statement = pooledConnection.getStatementCache().prepare(sql, false);
+					
+					for (Object[] parameters : parametersList) {
+						checkParametersAmount(statement.getPlaceholders(), parameters);
+						int index = 1;
+						for (Object o : parameters) {
+							setParameter(statement.getStatement(), index, o);
+							index++;
+						}
+						statement.getStatement().addBatch();
+					}
+					
+					updateCounts = statement.getStatement().executeBatch();
+					statement.release();
+					statement = null;
+				}
+				
+				connection.commit();
+				
+			} catch (SQLException e) {
+				try {
+					connection.rollback();
+				} catch (SQLException ex) { }
+				throw e;
+				
+			} finally {
+				try {
+					connection.setAutoCommit(autoCommit);
+				} catch (SQLException ex) { }
+			}
+			
+			execution.finish(parametersList.size(), false);
+			return new BatchResult(updateCounts, parametersList.size(), multiRowInsert != null ? updateCounts.length : 1, System.nanoTime() - start);
+			
+		} catch (SQLException e) {
+			handleSQLException(pooledConnection, statement, sql, e);
+			pooledConnection = null;
+			execution.finish(0, true);
+			throw e;
+		} finally {
+			if (pooledConnection != null) {
+				pooledConnection.release(false);
+			}
+			invalidateQueryCache(sql);
+		}
+	}
+	
+	
 	/**
 	 * Executes an update.<br>
 	 * <b>Warning!</b> Use a prepared statement if there are user inputs, to avoid SQL injection.
 	 */
 	public int update(@NonNull String sql) throws SQLException {
+		PooledConnection pooledConnection = null;
+		Execution execution = stats.start(sql);
+		
 		try {
-			checkNullConnection();
-			Statement statement = connection.createStatement();
+			pooledConnection = borrowConnection();
+			Statement statement = pooledConnection.getConnection().createStatement();
 			try {
 				int rowCount = statement.executeUpdate(sql);
+				execution.finish(rowCount, false);
 				return rowCount;
 			} finally {
 				statement.close(); // Qui va sempre chiuso
 			}
 			
 		} catch (SQLException e) {
-			handleSQLException(null, sql, e);
+			handleSQLException(pooledConnection, null, sql, e);
+			pooledConnection = null;
+			execution.finish(0, true);
 			throw e;
+		} finally {
+			if (pooledConnection != null) {
+				pooledConnection.release(false);
+			}
+			invalidateQueryCache(sql);
 		}
 	}
 	
 	
 	/**
 	 * Executes an update and auto generated keys.<br>
-	 * <b>Warning!</b> Use a prepared statement if there are user inputs, to avoid SQL injection.
+	 * <b>Warning!</b> Use a prepared statement if there are user inputs, to avoid SQL injection.<br>
+	 * The result holds a pooled connection until it's closed, always close it.
 	 */
 	public SQLResult updateAndKeys(@NonNull String sql) throws SQLException {
+		PooledConnection pooledConnection = null;
 		Statement statement = null;
+		Execution execution = stats.start(sql);
 		
 		try {
-			checkNullConnection();
-			statement = connection.createStatement();
+			pooledConnection = borrowConnection();
+			statement = pooledConnection.getConnection().createStatement();
 			statement.executeUpdate(sql);
+			execution.executed();
 			ResultSet resultSet = statement.getGeneratedKeys();
-			return new SQLResult(statement, resultSet);
+			return new SQLResult(statement, resultSet, releaseHandler(pooledConnection, statement), execution);
 			
 		} catch (SQLException e) {
-			handleSQLException(statement, sql, e);
+			handleSQLException(pooledConnection, statement, sql, e);
+			execution.finish(0, true);
 			throw e;
+		} finally {
+			invalidateQueryCache(sql);
 		}
 	}
 	
 	
 	/**
 	 * Queries the database.<br>
-	 * <b>Warning!</b> Use a prepared statement if there are user inputs, to avoid SQL injection.
+	 * <b>Warning!</b> Use a prepared statement if there are user inputs, to avoid SQL injection.<br>
+	 * The result holds a pooled connection until it's closed, always close it.
+	 * @see #preparedQuery(String, Object...)
 	 */
 	public SQLResult query(@NonNull final String sql) throws SQLException {
+		PooledConnection pooledConnection = null;
 		Statement statement = null;
+		Execution execution = stats.start(sql);
 		
 		try {
-			checkNullConnection();
-			statement = connection.createStatement();
+			pooledConnection = borrowConnection();
+			statement = pooledConnection.getConnection().createStatement();
 			ResultSet resultSet = statement.executeQuery(sql);
-			return new SQLResult(statement, resultSet);
+			execution.executed();
+			return new SQLResult(statement, resultSet, releaseHandler(pooledConnection, statement), execution);
 			
 		} catch (SQLException e) {
-			handleSQLException(statement, sql, e);
+			handleSQLException(pooledConnection, statement, sql, e);
+			execution.finish(0, true);
 			throw e;
 		}
     }
 	
 	
+	/**
+	 * Executes a prepared query on the async executor. The result is passed to the handler and then closed.<br>
+	 * The future completes on the executor thread: use {@link MySQLExecutor#primaryThread(org.bukkit.plugin.Plugin)} to continue on the main thread.
+	 * If too many tasks are pending, the future fails immediately.
+	 */
+	public <T> CompletableFuture<T> queryAsync(@NonNull String sql, @NonNull ResultHandler<T> resultHandler, Object... parameters) {
+		return getAsyncExecutor().submit(() -> {
+			try (SQLResult result = preparedQuery(sql, parameters)) {
+				return resultHandler.handle(result);
+			}
+		});
+	}
+	
+	
+	/**
+	 * Executes a prepared update on the async executor, the future returns the row count.
+	 * @see #queryAsync(String, ResultHandler, Object...)
+	 */
+	public CompletableFuture<Integer> updateAsync(@NonNull String sql, Object... parameters) {
+		return getAsyncExecutor().submit(() -> preparedUpdate(sql, parameters));
+	}
+	
+	
+	/**
+	 * Returns the executor used by the async methods, creating it if needed.
+	 */
+	public synchronized MySQLExecutor getAsyncExecutor() {
+		if (asyncExecutor == null) {
+			asyncExecutor = new MySQLExecutor(asyncThreads, asyncQueueCapacity, virtualThreads);
+		}
+		return asyncExecutor;
+	}
+	
+	
+	/**
+	 * Returns the objects that are currently connected, for diagnostics.
+	 */
+	public static List<MySQL> getActiveInstances() {
+		synchronized (activeInstances) {
+			return Lists.newArrayList(activeInstances);
+		}
+	}
+	
+	
+	@Override
+	public String toString() {
+		return database + "@" + host + ":" + port;
+	}
+	
+	
 	public static String escapeLikeParameter(@NonNull String s) {
 		StringBuilder result = new StringBuilder();
 		
@@ -255,31 +694,49 @@ public class MySQL {
 	
 	/**
 	 * Prepare a statement with parameters already set, returning auto generated keys.
+	 * The statement is taken from the cache of the connection if possible.
 	 * Internal use, the MOST COMPLETE method.
 	 */
-	private PreparedStatement prepareWithParameters(Connection connection, String sql, boolean returnGeneratedKeys, Object... parameters) throws SQLException {
-		int parametersAmount = parameters != null ? parameters.length : 0;
+	private CachedStatement prepareWithParameters(PooledConnection pooledConnection, String sql, boolean returnGeneratedKeys, Object... parameters) throws SQLException {
+		CachedStatement cachedStatement = pooledConnection.getStatementCache().prepare(sql, returnGeneratedKeys);
 		
-		if (countOccurrences(sql, '?') != parametersAmount) {
-			throw new SQLException("Amount of parameters doesn't match amount of values (question marks)");
+		try {
+			checkParametersAmount(cachedStatement.getPlaceholders(), parameters);
+			
+			if (parameters != null) {
+				PreparedStatement statement = cachedStatement.getStatement();
+				int index = 1;
+				for (Object o : parameters) {
+					setParameter(statement, index, o);
+					index++;
+				}
+			}
+		} catch (SQLException e) {
+			cachedStatement.release();
+			throw e;
 		}
 		
-		PreparedStatement statement;
-		if (returnGeneratedKeys) {
-			statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-		} else {
-			statement = connection.prepareStatement(sql);
-		}
-
-		if (parametersAmount > 0) {
-			int index = 1;
+		return cachedStatement;
+	}
+	
+	private int executeMultiRowInsert(PreparedStatement statement, MultiRowInsert multiRowInsert, List<Object[]> rows) throws SQLException {
+		int index = 1;
+		for (Object[] parameters : rows) {
+			checkParametersAmount(multiRowInsert.getPlaceholdersPerRow(), parameters);
 			for (Object o : parameters) {
 				setParameter(statement, index, o);
 				index++;
 			}
 		}
+		return statement.executeUpdate();
+	}
+	
+	private void checkParametersAmount(int placeholders, Object[] parameters) throws SQLException {
+		int parametersAmount = parameters != null ? parameters.length : 0;
 		
-		return statement;
+		if (placeholders != parametersAmount) {
+			throw new SQLException("Amount of parameters doesn't match amount of values (question marks)");
+		}
 	}
 	
 	private void setParameter(PreparedStatement statement, int index, Object param) throws SQLException {
@@ -318,42 +775,101 @@ public class MySQL {
 	}
 	
 	
-	private void handleSQLException(AutoCloseable closeable, String sql, SQLException sqlException) {
+	/**
+	 * Closes the statement, logs the error and gives back the connection to the pool.
+	 */
+	private void handleSQLException(PooledConnection pooledConnection, AutoCloseable closeable, String sql, SQLException sqlException) {
 		if (closeable != null) {
 			try {
 				closeable.close();
 			} catch (Exception ex) { }
 		}
+		if (sqlException instanceof CircuitOpenException) {
+			return; // Already logged when the circuit was opened, no connection was borrowed
+		}
 		WildCommonsPlugin.mysqlErrorLogger.log("MySQL error (query: " + sql + "): " + sqlException.toString().replaceAll("\n{2,}", "\n"));
-		if (!isConnectionValid()) {
-			// Se è un errore di connessione (e non per esempio di query) proviamo a riconnettere
-			try {
-				connect();
-				WildCommonsPlugin.mysqlErrorLogger.log("Reconnection attempt succeeded!");
-			} catch (SQLException e) {
-				WildCommonsPlugin.mysqlErrorLogger.log("Reconnection attempt failed.");
+		
+		if (pooledConnection != null) {
+			// Se è un errore di connessione (e non per esempio di query) la connessione viene scartata, il pool ne aprirà una nuova
+			boolean broken = !isConnectionValid(pooledConnection.getConnection());
+			pooledConnection.release(broken);
+			if (broken) {
+				WildCommonsPlugin.mysqlErrorLogger.log("Discarded broken connection, a new one will be opened.");
+			}
+			
+			// The database may have gone away while the connection was in use
+			if (isConnectionError(sqlException)) {
+				circuitBreaker.recordFailure(sqlException);
 			}
 		}
 	}
 	
+	/**
+	 * SQLState class 08: connection exception.
+	 */
+	private static boolean isConnectionError(SQLException sqlException) {
+		String sqlState = sqlException.getSQLState();
+		return sqlState != null && sqlState.startsWith("08");
+	}
+	
 	
-    private void checkNullConnection() throws SQLException {
-		if (connection == null) {
-			throw new SQLException("Connection was null (either connect() was not called or failed)");
+	/**
+	 * Removes the cached results of the table written by the statement. Also called on errors, the write may be partially applied.
+	 */
+	private void invalidateQueryCache(String writeSql) {
+		QueryCache queryCache = this.queryCache;
+		if (queryCache != null) {
+			queryCache.invalidateFor(writeSql);
 		}
 	}
-    
-    
-    private int countOccurrences(String haystack, char needle) {
-        int count = 0;
-        
-        for (int i = 0; i < haystack.length(); i++) {
-            if (haystack.charAt(i) == needle) {
-                 count++;
-            }
-        }
-        
-        return count;
-    }
+	
+	private PooledConnection borrowConnection() throws SQLException {
+		ConnectionPool pool = this.pool;
+		if (pool == null) {
+			throw new SQLException("Connection pool was null (either connect() was not called or failed)");
+		}
+		// Idle connections are probably dead too while the database is unreachable, and a working one closes the circuit
+		return circuitBreaker.call(pool::borrow);
+	}
+	
+	private Runnable releaseHandler(PooledConnection pooledConnection, CachedStatement statement) {
+		return () -> {
+			statement.release();
+			pooledConnection.release(false);
+		};
+	}
+	
+	private Runnable releaseHandler(PooledConnection pooledConnection, Statement statement) {
+		return () -> {
+			try {
+				statement.close();
+			} catch (SQLException e) { }
+			pooledConnection.release(false);
+		};
+	}
+	
+	/**
+	 * Opens a new connection, reporting failures to the circuit breaker. Callers must go through {@link CircuitBreaker#call(CircuitBreaker.Attempt)}.
+	 */
+	private Connection openConnection() throws SQLException {
+		try {
+			Connection connection = openConnectionDirectly();
+			circuitBreaker.recordSuccess();
+			return connection;
+		} catch (SQLException | RuntimeException e) {
+			circuitBreaker.recordFailure(e);
+			throw e;
+		}
+	}
+	
+	private Connection openConnectionDirectly() throws SQLException {
+        return DriverManager.getConnection(
+        		"jdbc:mysql://" + host + ":" + port + "/" + database +							// URI
+        		"?useSSL=false" +																// Disable warning
+        		(statementCacheSize > 0 ? "&useServerPrepStmts=true" : ""),					// Statements are cached, prepare them server side
+//        		"&connectTimeout=" + (TIMEOUT * 1000) + "&socketTimeout=" + (TIMEOUT * 1000), 	// Query
+        		user, password); 																// Authentication
+	}
+
 	
 }
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package wild.api.mysql;
+
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * Bounded executor for the async methods of {@link MySQL}.<br>
+ * When the queue is full new tasks are rejected immediately (the future fails with an SQLException),
+ * so a stalled database cannot pile up an unlimited amount of waiting tasks.
+ */
+public class MySQLExecutor {
+
+	private static final AtomicInteger threadCounter = new AtomicInteger();
+
+	private final ThreadPoolExecutor executor;
+	@Getter private final int threads;
+	@Getter private final int queueCapacity;
+	@Getter private final boolean virtualThreads;
+
+	private final AtomicLong rejectedTasks = new AtomicLong();
+
+
+	/**
+	 * @param threads maximum amount of tasks executed at the same time
+	 * @param queueCapacity maximum amount of tasks waiting for a thread
+	 * @param virtualThreads if true, tasks are executed on virtual threads instead of platform threads
+	 */
+	MySQLExecutor(int threads, int queueCapacity, boolean virtualThreads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Threads must be at least 1");
+		}
+		if (queueCapacity < 1) {
+			throw new IllegalArgumentException("Queue capacity must be at least 1");
+		}
+		this.threads = threads;
+		this.queueCapacity = queueCapacity;
+		this.virtualThreads = virtualThreads;
+
+		ThreadFactory threadFactory;
+		if (virtualThreads) {
+			threadFactory = Thread.ofVirtual().name("WildCommons MySQL (virtual) #", 1).factory();
+		} else {
+			threadFactory = runnable -> {
+				Thread thread = new Thread(runnable, "WildCommons MySQL #" + threadCounter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			};
+		}
+
+		this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueCapacity), threadFactory);
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+
+	/**
+	 * Runs the task asynchronously, the future completes on the executor thread.
+	 */
+	<T> CompletableFuture<T> submit(@NonNull Callable<T> task) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+
+		try {
+			executor.execute(() -> {
+				try {
+					future.complete(task.call());
+				} catch (Throwable t) {
+					future.completeExceptionally(t);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			rejectedTasks.incrementAndGet();
+			future.completeExceptionally(new SQLException("Too many pending async queries (" + getQueuedTasks() + " queued), request rejected", e));
+		}
+
+		return future;
+	}
+
+	/**
+	 * Stops accepting new tasks, waiting for the queued ones to complete.
+	 */
+	void shutdown() {
+		executor.shutdown();
+		try {
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public int getQueuedTasks() {
+		return executor.getQueue().size();
+	}
+
+	public int getActiveTasks() {
+		return executor.getActiveCount();
+	}
+
+	public long getRejectedTasks() {
+		return rejectedTasks.get();
+	}
+
+
+	/**
+	 * Executor that runs tasks on the Bukkit primary thread, to be used with the async methods of CompletableFuture.<br>
+	 * Example: <code>mysql.queryAsync(...).thenAcceptAsync(value -> {...}, MySQLExecutor.primaryThread(plugin))</code>
+	 */
+	public static Executor primaryThread(@NonNull Plugin plugin) {
+		return task -> {
+			if (Bukkit.isPrimaryThread()) {
+				task.run();
+			} else {
+				Bukkit.getScheduler().runTask(plugin, task);
+			}
+		};
+	}
+
+}
@@ -28,12 +28,15 @@
 */
 package wild.api.mysql;
 
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.NonNull;
 
 /**
  * A class to specify the type of a null value.
+ * Equal when both the type and the value are equal, so that it can be part of a key.
  */
+@EqualsAndHashCode
 public class Nullable {
 	
 	@Getter private final Class<?> nullType;
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package wild.api.mysql;
+
+import java.sql.Connection;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.Getter;
+
+/**
+ * A connection owned by a {@link ConnectionPool}, lent to one thread at a time.
+ */
+class PooledConnection {
+
+	private final ConnectionPool pool;
+	@Getter private final Connection connection;
+	@Getter private final StatementCache statementCache;
+	@Getter private long lastUsed;
+	@Getter private volatile long borrowedAt;
+	@Getter private volatile Throwable borrowStack; // Null if leak detection is disabled
+	private final AtomicBoolean leakReported = new AtomicBoolean();
+
+	PooledConnection(ConnectionPool pool, Connection connection, int statementCacheSize, AtomicLong statementCacheHits, AtomicLong statementCacheMisses) {
+		this.pool = pool;
+		this.connection = connection;
+		this.statementCache = new StatementCache(connection, statementCacheSize, statementCacheHits, statementCacheMisses);
+		this.lastUsed = System.currentTimeMillis();
+	}
+
+	/**
+	 * Gives back the connection to the pool it was borrowed from.
+	 */
+	void release(boolean broken) {
+		pool.release(this, broken);
+	}
+
+	void lend(Throwable borrowStack) {
+		this.borrowedAt = System.currentTimeMillis();
+		this.borrowStack = borrowStack;
+		this.leakReported.set(false);
+	}
+
+	/**
+	 * Returns true only the first time it's called for the current borrow.
+	 */
+	boolean markLeakReported() {
+		return leakReported.compareAndSet(false, true);
+	}
+
+	boolean isBorrowedFor(long now, long millis) {
+		return now - borrowedAt > millis;
+	}
+
+	void touch() {
+		lastUsed = System.currentTimeMillis();
+	}
+
+	boolean isIdleFor(long now, long millis) {
+		return now - lastUsed > millis;
+	}
+
+	void close() {
+		try {
+			connection.close();
+		} catch (Exception ex) { }
+	}
+
+}
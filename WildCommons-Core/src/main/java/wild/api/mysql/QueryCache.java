@@ -0,0 +1,351 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package wild.api.mysql;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+/**
+ * Read-through cache for the results of {@link MySQL#cachedQuery(String, RowMapper, Object...)}.<br>
+ * Entries expire after a fixed time and the least recently used are evicted when full.
+ * Writes executed through {@link MySQL} invalidate the entries that read from the same tables.
+ */
+public class QueryCache {
+
+	private static final Pattern READ_TABLES_PATTERN = Pattern.compile("\\b(?:FROM|JOIN)\\s+([`\\w.]+(?:\\s*,\\s*[`\\w.]+)*)", Pattern.CASE_INSENSITIVE);
+	private static final Pattern WRITE_TABLE_PATTERN = Pattern.compile(
+			"^\\s*(?:(?:INSERT|REPLACE)(?:\\s+(?:LOW_PRIORITY|DELAYED|HIGH_PRIORITY|IGNORE))*(?:\\s+INTO)?"
+			+ "|UPDATE(?:\\s+(?:LOW_PRIORITY|IGNORE))*"
+			+ "|DELETE\\s+(?:(?:LOW_PRIORITY|QUICK|IGNORE)\\s+)*FROM"
+			+ "|TRUNCATE(?:\\s+TABLE)?"
+			+ "|(?:ALTER|DROP|CREATE|RENAME)(?:\\s+TEMPORARY)?\\s+TABLE(?:\\s+IF\\s+(?:NOT\\s+)?EXISTS)?)"
+			+ "\\s+([`\\w.]+)", Pattern.CASE_INSENSITIVE);
+
+	@Getter private final long ttl;
+	@Getter private final int maxEntries;
+
+	private final Map<CacheKey, CachedResult> entries; // Guarded by this
+	private final Map<String, Set<CacheKey>> keysByTable = new HashMap<>(); // Guarded by this
+	private final Map<String, Long> tableInvalidations = new HashMap<>(); // Guarded by this
+	private long lastFullInvalidation; // Guarded by this
+	private final AtomicLong epoch = new AtomicLong();
+	private final Map<CacheKey, PendingLoad> pendingLoads = new ConcurrentHashMap<>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+
+
+	/**
+	 * @param ttl milliseconds after which a result is read again from the database
+	 * @param maxEntries maximum amount of cached results
+	 */
+	QueryCache(long ttl, int maxEntries) {
+		if (maxEntries < 1) {
+			throw new IllegalArgumentException("Max entries must be at least 1");
+		}
+		this.ttl = ttl;
+		this.maxEntries = maxEntries;
+		this.entries = new LinkedHashMap<CacheKey, CachedResult>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<CacheKey, CachedResult> eldest) {
+				if (size() > QueryCache.this.maxEntries) {
+					unlinkTables(eldest.getKey(), eldest.getValue());
+					evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+
+	/**
+	 * Returns the cached rows, or loads them with the loader. Concurrent calls with the same key wait for a single load.
+	 */
+	@SuppressWarnings("unchecked")
+	<T> List<T> getOrLoad(CacheKey key, Set<String> tables, Loader<T> loader) throws SQLException {
+		List<?> cached = getIfPresent(key);
+		if (cached != null) {
+			hits.incrementAndGet();
+			return (List<T>) cached;
+		}
+
+		PendingLoad load = new PendingLoad(tables);
+		PendingLoad existing = pendingLoads.putIfAbsent(key, load);
+		if (existing != null) {
+			// Another thread is already reading the same rows
+			hits.incrementAndGet();
+			return (List<T>) awaitLoad(existing);
+		}
+
+		misses.incrementAndGet();
+		try {
+			long queryEpoch = epoch.get();
+			List<T> rows = Collections.unmodifiableList(loader.load());
+			put(key, rows, tables, queryEpoch);
+			load.future.complete(rows);
+			return rows;
+
+		} catch (SQLException | RuntimeException e) {
+			load.future.completeExceptionally(e);
+			throw e;
+		} finally {
+			pendingLoads.remove(key, load);
+		}
+	}
+
+	private synchronized List<?> getIfPresent(CacheKey key) {
+		CachedResult cached = entries.get(key);
+
+		if (cached != null && System.currentTimeMillis() - cached.timestamp > ttl) {
+			entries.remove(key);
+			unlinkTables(key, cached);
+			return null;
+		}
+
+		return cached != null ? cached.rows : null;
+	}
+
+	/**
+	 * Caches the rows, unless one of the tables was written while the query was running.
+	 */
+	private synchronized void put(CacheKey key, List<?> rows, Set<String> tables, long queryEpoch) {
+		if (lastFullInvalidation > queryEpoch) {
+			return;
+		}
+		for (String table : tables) {
+			Long invalidation = tableInvalidations.get(table);
+			if (invalidation != null && invalidation > queryEpoch) {
+				return;
+			}
+		}
+
+		CachedResult previous = entries.put(key, new CachedResult(rows, tables, System.currentTimeMillis()));
+		if (previous != null) {
+			unlinkTables(key, previous);
+		}
+		for (String table : tables) {
+			keysByTable.computeIfAbsent(table, t -> new HashSet<>()).add(key);
+		}
+	}
+
+	private static List<?> awaitLoad(PendingLoad load) throws SQLException {
+		try {
+			return load.future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for cached query", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof SQLException) {
+				throw (SQLException) e.getCause();
+			}
+			throw new SQLException("Cached query failed", e.getCause());
+		}
+	}
+
+	/**
+	 * Removes the results that read from the table written by the statement, or everything if the table is not recognized.
+	 */
+	void invalidateFor(String writeSql) {
+		Matcher matcher = WRITE_TABLE_PATTERN.matcher(writeSql);
+		if (matcher.find()) {
+			invalidateTable(matcher.group(1));
+		} else {
+			invalidateAll();
+		}
+	}
+
+	public synchronized void invalidateTable(String table) {
+		String normalized = normalizeTable(table);
+		tableInvalidations.put(normalized, epoch.incrementAndGet());
+		pendingLoads.values().removeIf(load -> load.tables.contains(normalized)); // Callers from now on must not wait for stale rows
+
+		Set<CacheKey> keys = keysByTable.remove(normalized);
+		if (keys != null) {
+			for (CacheKey key : keys) {
+				CachedResult removed = entries.remove(key);
+				if (removed != null) {
+					unlinkTables(key, removed);
+					invalidations.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	public synchronized void invalidateAll() {
+		lastFullInvalidation = epoch.incrementAndGet();
+		pendingLoads.clear();
+		invalidations.addAndGet(entries.size());
+		entries.clear();
+		keysByTable.clear();
+		tableInvalidations.clear();
+	}
+
+	public synchronized int getSize() {
+		return entries.size();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public long getInvalidations() {
+		return invalidations.get();
+	}
+
+	public double getHitRate() {
+		long hits = this.hits.get();
+		long total = hits + misses.get();
+		return total > 0 ? (double) hits / total : 0.0;
+	}
+
+	@Override
+	public String toString() {
+		return "QueryCache [size=" + getSize() + "/" + maxEntries + ", hits=" + getHits() + ", misses=" + getMisses()
+				+ ", hitRate=" + String.format("%.1f", getHitRate() * 100) + "%, evictions=" + getEvictions() + ", invalidations=" + getInvalidations() + "]";
+	}
+
+
+	private void unlinkTables(CacheKey key, CachedResult cached) {
+		for (String table : cached.tables) {
+			Set<CacheKey> keys = keysByTable.get(table);
+			if (keys != null) {
+				keys.remove(key);
+				if (keys.isEmpty()) {
+					keysByTable.remove(table);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds the tables read by a SELECT statement.
+	 */
+	static Set<String> extractReadTables(String sql) {
+		Set<String> tables = new HashSet<>();
+		Matcher matcher = READ_TABLES_PATTERN.matcher(sql);
+
+		while (matcher.find()) {
+			for (String table : matcher.group(1).split(",")) {
+				tables.add(normalizeTable(table));
+			}
+		}
+		return tables;
+	}
+
+	private static String normalizeTable(String table) {
+		String normalized = table.trim().replace("`", "");
+		int dotIndex = normalized.lastIndexOf('.');
+		if (dotIndex >= 0) {
+			normalized = normalized.substring(dotIndex + 1);
+		}
+		return normalized.toLowerCase(Locale.ROOT);
+	}
+
+
+	@EqualsAndHashCode
+	static class CacheKey {
+
+		private final String sql;
+		private final RowMapper<?> rowMapper; // Compared with equals(), by identity for lambdas
+		private final List<Object> parameters;
+
+		CacheKey(String sql, RowMapper<?> rowMapper, Object[] parameters) {
+			this.sql = sql;
+			this.rowMapper = rowMapper;
+			this.parameters = parameters != null ? Arrays.asList(parameters.clone()) : Collections.emptyList();
+		}
+
+	}
+
+
+	interface Loader<T> {
+
+		public List<T> load() throws SQLException;
+
+	}
+
+
+	private static class PendingLoad {
+
+		private final Set<String> tables;
+		private final CompletableFuture<List<?>> future = new CompletableFuture<>();
+
+		private PendingLoad(Set<String> tables) {
+			this.tables = tables;
+		}
+
+	}
+
+
+	private static class CachedResult {
+
+		private final List<?> rows;
+		private final Set<String> tables;
+		private final long timestamp;
+
+		private CachedResult(List<?> rows, Set<String> tables, long timestamp) {
+			this.rows = rows;
+			this.tables = tables;
+			this.timestamp = timestamp;
+		}
+
+	}
+
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package wild.api.mysql;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Collectors;
+
+import lombok.Getter;
+import lombok.Setter;
+import wild.core.WildCommonsPlugin;
+
+/**
+ * Latency, row counts and errors of the statements executed by a {@link MySQL} object, grouped by SQL template
+ * (the statement with literals replaced by question marks). Failed statements are counted apart, not in the latency.
+ */
+public class QueryStats {
+
+	/**
+	 * Bucket 0 counts executions under 1 ms, bucket i those under 2^i ms, the last one everything else.
+	 */
+	public static final int HISTOGRAM_BUCKETS = 16;
+
+	private static final int MAX_TEMPLATES = 500; // Further templates are grouped together, to avoid unbounded growth
+	private static final String OTHER_TEMPLATE = "<altre query>";
+
+	private final Map<String, TemplateStats> templates = new ConcurrentHashMap<>();
+	private final Map<String, TemplateStats> templatesBySql = new ConcurrentHashMap<>(); // Avoids normalizing the same string again
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	/**
+	 * Statements slower than this amount of milliseconds are written to the slow query log, 0 to disable.
+	 */
+	@Setter @Getter private volatile long slowQueryThreshold;
+
+
+	QueryStats(long slowQueryThreshold) {
+		this.slowQueryThreshold = slowQueryThreshold;
+	}
+
+
+	/**
+	 * Starts timing a statement, {@link Execution#finish(long, boolean)} must always be called afterwards.
+	 */
+	Execution start(String sql) {
+		inFlight.incrementAndGet();
+		return new Execution(getTemplateStats(sql), sql);
+	}
+
+	/**
+	 * Amount of statements being executed, or whose results are still open.
+	 */
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	public Collection<TemplateStats> getTemplates() {
+		return templates.values();
+	}
+
+	/**
+	 * Returns the templates with the highest total execution time.
+	 */
+	public List<TemplateStats> getTopByTotalTime(int limit) {
+		return templates.values().stream()
+				.sorted(Comparator.comparingLong(TemplateStats::getTotalNanos).reversed())
+				.limit(limit)
+				.collect(Collectors.toList());
+	}
+
+	public void reset() {
+		templates.clear();
+		templatesBySql.clear();
+	}
+
+
+	private TemplateStats getTemplateStats(String sql) {
+		TemplateStats stats = templatesBySql.get(sql);
+		if (stats != null) {
+			return stats;
+		}
+
+		String template = toTemplate(sql);
+		if (templates.size() >= MAX_TEMPLATES && !templates.containsKey(template)) {
+			template = OTHER_TEMPLATE;
+		}
+		stats = templates.computeIfAbsent(template, TemplateStats::new);
+
+		if (templatesBySql.size() < MAX_TEMPLATES * 2) {
+			templatesBySql.put(sql, stats);
+		}
+		return stats;
+	}
+
+	/**
+	 * Collapses whitespace and replaces string and number literals with question marks.
+	 */
+	static String toTemplate(String sql) {
+		StringBuilder template = new StringBuilder(sql.length());
+		int length = sql.length();
+		boolean pendingSpace = false;
+
+		for (int i = 0; i < length; i++) {
+			char c = sql.charAt(i);
+
+			if (Character.isWhitespace(c)) {
+				pendingSpace = template.length() > 0;
+				continue;
+			}
+			if (pendingSpace) {
+				template.append(' ');
+				pendingSpace = false;
+			}
+
+			if (c == '\'' || c == '"') {
+				// String literal, skipped until the closing quote
+				for (i++; i < length && sql.charAt(i) != c; i++) {
+					if (sql.charAt(i) == '\\') {
+						i++;
+					}
+				}
+				template.append('?');
+
+			} else if (Character.isDigit(c) && (i == 0 || !isIdentifierPart(sql.charAt(i - 1)))) {
+				while (i + 1 < length && (Character.isDigit(sql.charAt(i + 1)) || sql.charAt(i + 1) == '.')) {
+					i++;
+				}
+				template.append('?');
+
+			} else {
+				template.append(c);
+			}
+		}
+
+		return template.toString();
+	}
+
+	private static boolean isIdentifierPart(char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '`' || c == '$';
+	}
+
+
+	/**
+	 * Statistics of the statements with the same template.
+	 */
+	public static class TemplateStats {
+
+		@Getter private final String template;
+
+		private final AtomicLong executions = new AtomicLong();
+		private final AtomicLong errors = new AtomicLong();
+		private final AtomicLong slowExecutions = new AtomicLong();
+		private final AtomicLong rows = new AtomicLong();
+		private final AtomicLong totalNanos = new AtomicLong();
+		private final AtomicLong maxNanos = new AtomicLong();
+		private final AtomicInteger inFlight = new AtomicInteger();
+		private final AtomicLongArray histogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+
+		private TemplateStats(String template) {
+			this.template = template;
+		}
+
+		private void recordLatency(long nanos) {
+			executions.incrementAndGet();
+			totalNanos.addAndGet(nanos);
+			maxNanos.accumulateAndGet(nanos, Math::max);
+			histogram.incrementAndGet(getBucket(TimeUnit.NANOSECONDS.toMillis(nanos)));
+		}
+
+		private static int getBucket(long millis) {
+			int bucket = 64 - Long.numberOfLeadingZeros(millis); // 0 ms -> 0, 1 ms -> 1, 2-3 ms -> 2, ...
+			return Math.min(bucket, HISTOGRAM_BUCKETS - 1);
+		}
+
+		public long getExecutions() {
+			return executions.get();
+		}
+
+		public long getErrors() {
+			return errors.get();
+		}
+
+		public long getSlowExecutions() {
+			return slowExecutions.get();
+		}
+
+		/**
+		 * Rows read from the results, or rows affected by updates.
+		 */
+		public long getRows() {
+			return rows.get();
+		}
+
+		public long getTotalNanos() {
+			return totalNanos.get();
+		}
+
+		public double getAverageMillis() {
+			long executions = this.executions.get();
+			return executions > 0 ? totalNanos.get() / 1_000_000.0 / executions : 0.0;
+		}
+
+		public double getMaxMillis() {
+			return maxNanos.get() / 1_000_000.0;
+		}
+
+		public int getInFlight() {
+			return inFlight.get();
+		}
+
+		/**
+		 * Count of executions in each bucket, see {@link QueryStats#HISTOGRAM_BUCKETS}.
+		 */
+		public long[] getHistogram() {
+			long[] counts = new long[HISTOGRAM_BUCKETS];
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] = histogram.get(i);
+			}
+			return counts;
+		}
+
+		/**
+		 * Upper bound in milliseconds of the bucket that contains the given percentile (0 - 100),
+		 * or -1 if it's in the last bucket, which has no upper bound.
+		 */
+		public long getPercentileUpperBoundMillis(double percentile) {
+			long[] counts = getHistogram();
+			long total = 0;
+			for (long count : counts) {
+				total += count;
+			}
+			if (total == 0) {
+				return 0;
+			}
+
+			long threshold = (long) Math.ceil(total * percentile / 100.0);
+			long cumulative = 0;
+			for (int i = 0; i < counts.length - 1; i++) {
+				cumulative += counts[i];
+				if (cumulative >= threshold) {
+					return 1L << i;
+				}
+			}
+			return -1;
+		}
+
+	}
+
+
+	/**
+	 * A single timed statement.
+	 */
+	class Execution {
+
+		private final TemplateStats stats;
+		private final String sql;
+		private final long startNanos;
+		private boolean executed;
+		private boolean finished;
+
+		private Execution(TemplateStats stats, String sql) {
+			this.stats = stats;
+			this.sql = sql;
+			this.startNanos = System.nanoTime();
+			stats.inFlight.incrementAndGet();
+		}
+
+		/**
+		 * Records the latency, when the statement was executed but the result is still being read.
+		 */
+		void executed() {
+			if (executed) {
+				return;
+			}
+			executed = true;
+
+			long elapsedNanos = System.nanoTime() - startNanos;
+			stats.recordLatency(elapsedNanos);
+
+			long threshold = slowQueryThreshold;
+			long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+			if (threshold > 0 && elapsedMillis >= threshold) {
+				stats.slowExecutions.incrementAndGet();
+				if (WildCommonsPlugin.mysqlSlowLogger != null) {
+					WildCommonsPlugin.mysqlSlowLogger.log(elapsedMillis + " ms (thread: " + Thread.currentThread().getName() + "): " + sql);
+				}
+			}
+		}
+
+		/**
+		 * Ends the execution, records the latency if not already done.
+		 * Failed statements are only counted as errors, their time would distort the latency and fill the slow query log.
+		 */
+		void finish(long rows, boolean failed) {
+			if (finished) {
+				return;
+			}
+			finished = true;
+
+			if (failed) {
+				stats.errors.incrementAndGet();
+			} else {
+				executed();
+			}
+			if (rows > 0) {
+				stats.rows.addAndGet(rows);
+			}
+			stats.inFlight.decrementAndGet();
+			inFlight.decrementAndGet();
+		}
+
+	}
+
+}
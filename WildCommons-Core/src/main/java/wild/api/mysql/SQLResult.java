@@ -30,22 +30,76 @@ package wild.api.mysql;
 
 import java.sql.Array;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.google.common.collect.Lists;
 
-import lombok.AccessLevel;
-import lombok.AllArgsConstructor;
 import lombok.NonNull;
+import wild.api.util.CaseInsensitiveMap;
 
-@AllArgsConstructor(access = AccessLevel.PROTECTED)
+/**
+ * Rows returned by a query of {@link MySQL}.<br>
+ * The result keeps its pooled connection until it's closed: an unclosed result pins the connection,
+ * and a few of them are enough to exhaust the pool. Always close it, for example with try-with-resources.
+ */
 public class SQLResult implements AutoCloseable {
 	
-	@NonNull private final Statement statement;
-	@NonNull private final ResultSet resultSet;
+	private final Statement statement;
+	private final ResultSet resultSet;
+	private final Runnable closeHandler;
+	private final QueryStats.Execution execution;
+	private boolean closed;
+	private long rowsRead;
+	private Map<String, Integer> columnIndexes; // Lazily read from the metadata, labels are case insensitive
+	
+	protected SQLResult(@NonNull Statement statement, @NonNull ResultSet resultSet) {
+		this(statement, resultSet, null, null);
+	}
+	
+	/**
+	 * @param closeHandler executed once after the result set is closed, it becomes responsible for the statement
+	 * @param execution finished when the result is closed, with the amount of rows read
+	 */
+	SQLResult(@NonNull Statement statement, @NonNull ResultSet resultSet, Runnable closeHandler, QueryStats.Execution execution) {
+		this.statement = statement;
+		this.resultSet = resultSet;
+		this.closeHandler = closeHandler;
+		this.execution = execution;
+	}
 	
 	@Override
 	public void close() throws SQLException {
-		statement.close();
+		if (closed) {
+			return;
+		}
+		closed = true;
+		
+		try {
+			if (closeHandler == null) {
+				statement.close();
+				return;
+			}
+			
+			try {
+				resultSet.close();
+			} finally {
+				closeHandler.run();
+			}
+		} finally {
+			if (execution != null) {
+				execution.finish(rowsRead, false);
+			}
+		}
 	}
 
 	public boolean absolute(int row) throws SQLException {
@@ -60,8 +114,92 @@ public class SQLResult implements AutoCloseable {
 		resultSet.beforeFirst();
 	}
 	
+	/**
+	 * Returns the index of the column. Indexes are read once from the metadata, then cached.
+	 */
 	public int findColumn(String columnLabel) throws SQLException {
-		return resultSet.findColumn(columnLabel);
+		if (columnIndexes == null) {
+			ResultSetMetaData metaData = resultSet.getMetaData();
+			Map<String, Integer> indexes = new CaseInsensitiveMap<>();
+			
+			for (int i = metaData.getColumnCount(); i >= 1; i--) {
+				indexes.put(metaData.getColumnLabel(i), i); // In case of duplicate labels, the first one wins
+			}
+			columnIndexes = indexes;
+		}
+		
+		Integer index = columnIndexes.get(columnLabel);
+		if (index == null) {
+			return resultSet.findColumn(columnLabel); // Throws the exception of the driver
+		}
+		return index;
+	}
+	
+	/**
+	 * Calls the consumer for each remaining row, then closes the result.
+	 */
+	public void forEach(@NonNull RowConsumer consumer) throws SQLException {
+		try {
+			while (next()) {
+				consumer.accept(this);
+			}
+		} finally {
+			close();
+		}
+	}
+	
+	/**
+	 * Maps each remaining row to an object, then closes the result.
+	 */
+	public <T> List<T> toList(@NonNull RowMapper<T> mapper) throws SQLException {
+		List<T> list = Lists.newArrayList();
+		forEach(row -> list.add(mapper.map(row)));
+		return list;
+	}
+	
+	/**
+	 * Returns a lazy stream of the remaining rows, mapped to objects. Closing the stream closes the result.<br>
+	 * Exceptions thrown while reading are wrapped in {@link UncheckedSQLException}.
+	 */
+	public <T> Stream<T> stream(@NonNull RowMapper<T> mapper) {
+		Iterator<T> iterator = new Iterator<T>() {
+			
+			private Boolean hasNext;
+			
+			@Override
+			public boolean hasNext() {
+				if (hasNext == null) {
+					try {
+						hasNext = SQLResult.this.next();
+					} catch (SQLException e) {
+						throw new UncheckedSQLException(e);
+					}
+				}
+				return hasNext;
+			}
+
+			@Override
+			public T next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				hasNext = null;
+				try {
+					return mapper.map(SQLResult.this);
+				} catch (SQLException e) {
+					throw new UncheckedSQLException(e);
+				}
+			}
+		};
+		
+		Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED);
+		return StreamSupport.stream(spliterator, false).onClose(() -> {
+			try {
+				close();
+			} catch (SQLException e) {
+				throw new UncheckedSQLException(e);
+			}
+		});
 	}
 
 	public boolean first() throws SQLException {
@@ -73,7 +211,7 @@ public class SQLResult implements AutoCloseable {
 	}
 
 	public Array getArray(String columnLabel) throws SQLException {
-		return resultSet.getArray(columnLabel);
+		return resultSet.getArray(findColumn(columnLabel));
 	}
 
 	public boolean getBoolean(int columnIndex) throws SQLException {
@@ -81,7 +219,7 @@ public class SQLResult implements AutoCloseable {
 	}
 
 	public boolean getBoolean(String columnLabel) throws SQLException {
-		return resultSet.getBoolean(columnLabel);
+		return resultSet.getBoolean(findColumn(columnLabel));
 	}
 
 	public double getDouble(int columnIndex) throws SQLException {
@@ -89,7 +227,7 @@ public class SQLResult implements AutoCloseable {
 	}
 
 	public double getDouble(String columnLabel) throws SQLException {
-		return resultSet.getDouble(columnLabel);
+		return resultSet.getDouble(findColumn(columnLabel));
 	}
 
 	public float getFloat(int columnIndex) throws SQLException {
@@ -97,7 +235,7 @@ public class SQLResult implements AutoCloseable {
 	}
 
 	public float getFloat(String columnLabel) throws SQLException {
-		return resultSet.getFloat(columnLabel);
+		return resultSet.getFloat(findColumn(columnLabel));
 	}
 
 	public int getInt(int columnIndex) throws SQLException {
@@ -105,7 +243,7 @@ public class SQLResult implements AutoCloseable {
 	}
 
 	public int getInt(String columnLabel) throws SQLException {
-		return resultSet.getInt(columnLabel);
+		return resultSet.getInt(findColumn(columnLabel));
 	}
 
 	public long getLong(int columnIndex) throws SQLException {
@@ -113,7 +251,7 @@ public class SQLResult implements AutoCloseable {
 	}
 
 	public long getLong(String columnLabel) throws SQLException {
-		return resultSet.getLong(columnLabel);
+		return resultSet.getLong(findColumn(columnLabel));
 	}
 
 	public short getShort(int columnIndex) throws SQLException {
@@ -121,7 +259,7 @@ public class SQLResult implements AutoCloseable {
 	}
 
 	public short getShort(String columnLabel) throws SQLException {
-		return resultSet.getShort(columnLabel);
+		return resultSet.getShort(findColumn(columnLabel));
 	}
 
 	public String getString(int columnIndex) throws SQLException {
@@ -129,7 +267,7 @@ public class SQLResult implements AutoCloseable {
 	}
 
 	public String getString(String columnLabel) throws SQLException {
-		return resultSet.getString(columnLabel);
+		return resultSet.getString(findColumn(columnLabel));
 	}
 	
 	public int getRow() throws SQLException {
@@ -161,7 +299,11 @@ public class SQLResult implements AutoCloseable {
 	}
 
 	public boolean next() throws SQLException {
-		return resultSet.next();
+		if (resultSet.next()) {
+			rowsRead++;
+			return true;
+		}
+		return false;
 	}
 
 	public boolean previous() throws SQLException {
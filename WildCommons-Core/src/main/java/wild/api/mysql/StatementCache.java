@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package wild.api.mysql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+/**
+ * LRU cache of prepared statements for a single connection, keyed by SQL text and generated keys mode.<br>
+ * Like the connection, it must be used by one thread at a time.
+ */
+class StatementCache {
+
+	private final Connection connection;
+	private final int capacity;
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+	private final Map<StatementKey, CachedStatement> statements;
+
+	StatementCache(Connection connection, int capacity, AtomicLong hits, AtomicLong misses) {
+		this.connection = connection;
+		this.capacity = capacity;
+		this.hits = hits;
+		this.misses = misses;
+		this.statements = new LinkedHashMap<StatementKey, CachedStatement>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<StatementKey, CachedStatement> eldest) {
+				if (size() > StatementCache.this.capacity) {
+					eldest.getValue().close();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns a cached statement for the given SQL, or prepares a new one.
+	 * The statement must be given back with {@link CachedStatement#release()}, or closed if it should not be reused.
+	 */
+	CachedStatement prepare(String sql, boolean returnGeneratedKeys) throws SQLException {
+		StatementKey key = new StatementKey(sql, returnGeneratedKeys);
+		CachedStatement cached = statements.remove(key); // Removed while in use, put back on release
+
+		if (cached != null) {
+			hits.incrementAndGet();
+			return cached;
+		}
+
+		misses.incrementAndGet();
+		PreparedStatement statement;
+		if (returnGeneratedKeys) {
+			statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+		} else {
+			statement = connection.prepareStatement(sql);
+		}
+		return new CachedStatement(key, statement, countOccurrences(sql, '?'));
+	}
+
+	static int countOccurrences(String haystack, char needle) {
+		int count = 0;
+
+		for (int i = 0; i < haystack.length(); i++) {
+			if (haystack.charAt(i) == needle) {
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+
+	@AllArgsConstructor
+	@EqualsAndHashCode
+	private static class StatementKey {
+
+		private final String sql;
+		private final boolean returnGeneratedKeys;
+
+	}
+
+
+	class CachedStatement implements AutoCloseable {
+
+		private final StatementKey key;
+		@Getter private final PreparedStatement statement;
+		@Getter private final int placeholders;
+
+		private CachedStatement(StatementKey key, PreparedStatement statement, int placeholders) {
+			this.key = key;
+			this.statement = statement;
+			this.placeholders = placeholders;
+		}
+
+		/**
+		 * Puts the statement back in the cache, ready to be reused.
+		 */
+		void release() {
+			try {
+				statement.clearParameters();
+				statement.clearBatch();
+			} catch (SQLException e) {
+				close();
+				return;
+			}
+
+			CachedStatement previous = statements.put(key, this);
+			if (previous != null && previous != this) {
+				previous.close();
+			}
+		}
+
+		/**
+		 * Closes the statement without caching it, for example after an error.
+		 */
+		@Override
+		public void close() {
+			try {
+				statement.close();
+			} catch (SQLException e) { }
+		}
+
+	}
+
+}
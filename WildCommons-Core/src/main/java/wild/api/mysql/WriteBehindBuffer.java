@@ -0,0 +1,392 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package wild.api.mysql;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import com.google.common.collect.Lists;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+import wild.api.util.FileLogger;
+import wild.core.WildCommonsPlugin;
+
+/**
+ * Collects frequent writes in memory and sends them to the database in periodic batches, from an async task.<br>
+ * Increments on the same statement and key are summed, upserts on the same statement and key keep only the last value.
+ * <p>
+ * Example:
+ * <pre>
+ * buffer.increment("UPDATE stats SET kills = kills + ? WHERE uuid = ?", 1, uuid.toString());
+ * buffer.upsert("INSERT INTO last_seen (uuid, time) VALUES (?, ?) ON DUPLICATE KEY UPDATE time = VALUES(time)", uuid.toString(), uuid.toString(), now);
+ * </pre>
+ * Create it with {@link #start(Plugin, MySQL, long, int)} and call {@link #close()} in onDisable to write the pending values before shutting down.
+ */
+public class WriteBehindBuffer {
+
+	private static final int CLOSE_FLUSH_ATTEMPTS = 3;
+	private static final long CLOSE_RETRY_DELAY = 1000;
+	private static final String SPILL_FILE_NAME = "write-behind-failed.log";
+
+	private final MySQL mysql;
+	private final Plugin plugin;
+	@Getter private final int maxPendingKeys;
+	private BukkitTask flushTask;
+
+	private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+	private final Object flushLock = new Object();
+	private volatile PendingWrites pending = new PendingWrites();
+	private final AtomicBoolean flushRequested = new AtomicBoolean();
+	private volatile boolean closed;
+
+	private final AtomicLong queuedWrites = new AtomicLong();
+	private final AtomicLong flushedRows = new AtomicLong();
+	private final AtomicLong droppedWrites = new AtomicLong();
+	private final AtomicLong droppedSinceLastFlush = new AtomicLong();
+
+
+	private WriteBehindBuffer(Plugin plugin, MySQL mysql, int maxPendingKeys) {
+		this.plugin = plugin;
+		this.mysql = mysql;
+		this.maxPendingKeys = maxPendingKeys;
+	}
+
+	/**
+	 * Creates a buffer and starts its periodic flush.
+	 * @param flushIntervalTicks ticks between each automatic flush
+	 * @param maxPendingKeys amount of distinct keys that triggers an early flush, the buffer never holds more than twice this amount
+	 */
+	public static WriteBehindBuffer start(@NonNull Plugin plugin, @NonNull MySQL mysql, long flushIntervalTicks, int maxPendingKeys) {
+		if (maxPendingKeys < 1) {
+			throw new IllegalArgumentException("Max pending keys must be at least 1");
+		}
+		WriteBehindBuffer buffer = new WriteBehindBuffer(plugin, mysql, maxPendingKeys);
+		buffer.flushTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, buffer::flush, flushIntervalTicks, flushIntervalTicks);
+		return buffer;
+	}
+
+
+	/**
+	 * Adds the delta to the pending increment of the statement with the given key parameters.
+	 * The statement is executed with the delta as first parameter, followed by the key parameters.
+	 */
+	public void increment(@NonNull String sql, long delta, Object... keyParameters) {
+		PendingKey key = new PendingKey(sql, keyParameters);
+
+		swapLock.readLock().lock();
+		try {
+			checkNotClosed();
+			if (isFull(pending.increments, key)) {
+				return;
+			}
+			pending.increments.merge(key, delta, Long::sum);
+		} finally {
+			swapLock.readLock().unlock();
+		}
+
+		afterWrite();
+	}
+
+	/**
+	 * Replaces the pending parameters of the statement for the given key.
+	 * The key only identifies the write in memory, it's not passed to the statement.
+	 */
+	public void upsert(@NonNull String sql, @NonNull Object key, Object... parameters) {
+		PendingKey pendingKey = new PendingKey(sql, new Object[] { key });
+
+		swapLock.readLock().lock();
+		try {
+			checkNotClosed();
+			if (isFull(pending.upserts, pendingKey)) {
+				return;
+			}
+			pending.upserts.put(pendingKey, parameters);
+		} finally {
+			swapLock.readLock().unlock();
+		}
+
+		afterWrite();
+	}
+
+	/**
+	 * Writes all the pending values, blocking until done. Values that fail to be written are kept for the next flush.
+	 */
+	public void flush() {
+		synchronized (flushLock) {
+			flushRequested.set(false);
+			PendingWrites toFlush;
+
+			swapLock.writeLock().lock();
+			try {
+				toFlush = pending;
+				pending = new PendingWrites();
+			} finally {
+				swapLock.writeLock().unlock();
+			}
+
+			if (toFlush.isEmpty()) {
+				return;
+			}
+
+			// Upserts first, then increments: statements are grouped and the order between different statements is not kept
+			for (Entry<String, Map<PendingKey, Object[]>> entry : groupBySql(toFlush.upserts).entrySet()) {
+				Map<PendingKey, Object[]> writes = entry.getValue();
+				if (!executeBatch(entry.getKey(), Lists.newArrayList(writes.values()))) {
+					restoreUpserts(writes);
+				}
+			}
+
+			for (Entry<String, Map<PendingKey, Long>> entry : groupBySql(toFlush.increments).entrySet()) {
+				Map<PendingKey, Long> writes = entry.getValue();
+				List<Object[]> parametersList = Lists.newArrayListWithCapacity(writes.size());
+
+				for (Entry<PendingKey, Long> write : writes.entrySet()) {
+					parametersList.add(incrementParameters(write.getKey(), write.getValue()));
+				}
+
+				if (!executeBatch(entry.getKey(), parametersList)) {
+					restoreIncrements(writes);
+				}
+			}
+
+			long dropped = droppedSinceLastFlush.getAndSet(0);
+			if (dropped > 0) {
+				WildCommonsPlugin.mysqlErrorLogger.log("Write-behind buffer was full, " + dropped + " writes were dropped");
+			}
+		}
+	}
+
+	/**
+	 * Stops the periodic flush and writes the pending values synchronously. To be called in onDisable.<br>
+	 * The flush is attempted again if it fails, the values that still can't be written are saved
+	 * to {@value #SPILL_FILE_NAME} in the plugin folder, so that they are not lost.
+	 */
+	public void close() {
+		swapLock.writeLock().lock();
+		try {
+			closed = true;
+		} finally {
+			swapLock.writeLock().unlock();
+		}
+
+		flushTask.cancel();
+
+		for (int attempt = 1; attempt <= CLOSE_FLUSH_ATTEMPTS; attempt++) {
+			flush();
+			if (getPendingKeys() == 0) {
+				return;
+			}
+			if (attempt < CLOSE_FLUSH_ATTEMPTS) {
+				try {
+					Thread.sleep(CLOSE_RETRY_DELAY);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+		}
+
+		spillPendingWrites();
+	}
+
+	public int getPendingKeys() {
+		PendingWrites current = pending;
+		return current.increments.size() + current.upserts.size();
+	}
+
+	public long getQueuedWrites() {
+		return queuedWrites.get();
+	}
+
+	public long getFlushedRows() {
+		return flushedRows.get();
+	}
+
+	public long getDroppedWrites() {
+		return droppedWrites.get();
+	}
+
+
+	private boolean isFull(Map<PendingKey, ?> map, PendingKey key) {
+		if (getPendingKeys() >= maxPendingKeys * 2 && !map.containsKey(key)) {
+			droppedWrites.incrementAndGet();
+			droppedSinceLastFlush.incrementAndGet();
+			return true;
+		}
+		return false;
+	}
+
+	private void afterWrite() {
+		queuedWrites.incrementAndGet();
+
+		if (getPendingKeys() >= maxPendingKeys && flushRequested.compareAndSet(false, true)) {
+			Bukkit.getScheduler().runTaskAsynchronously(plugin, this::flush);
+		}
+	}
+
+	private boolean executeBatch(String sql, List<Object[]> parametersList) {
+		try {
+			mysql.preparedBatch(sql, parametersList, true);
+			flushedRows.addAndGet(parametersList.size());
+			return true;
+		} catch (SQLException e) {
+			// Already logged by MySQL
+			return false;
+		}
+	}
+
+	private void restoreIncrements(Map<PendingKey, Long> writes) {
+		swapLock.readLock().lock();
+		try {
+			for (Entry<PendingKey, Long> write : writes.entrySet()) {
+				if (!isFull(pending.increments, write.getKey())) {
+					pending.increments.merge(write.getKey(), write.getValue(), Long::sum);
+				}
+			}
+		} finally {
+			swapLock.readLock().unlock();
+		}
+	}
+
+	private void restoreUpserts(Map<PendingKey, Object[]> writes) {
+		swapLock.readLock().lock();
+		try {
+			for (Entry<PendingKey, Object[]> write : writes.entrySet()) {
+				// Newer values written in the meantime win
+				if (!isFull(pending.upserts, write.getKey())) {
+					pending.upserts.putIfAbsent(write.getKey(), write.getValue());
+				}
+			}
+		} finally {
+			swapLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Saves the values that could not be written to a file, one statement with its parameters for each line.
+	 */
+	private void spillPendingWrites() {
+		PendingWrites remaining;
+		swapLock.writeLock().lock();
+		try {
+			remaining = pending;
+			pending = new PendingWrites();
+		} finally {
+			swapLock.writeLock().unlock();
+		}
+
+		StringBuilder lines = new StringBuilder();
+		for (Entry<PendingKey, Object[]> write : remaining.upserts.entrySet()) {
+			lines.append('\n').append(write.getKey().sql).append(" -- ").append(formatParameters(write.getValue()));
+		}
+		for (Entry<PendingKey, Long> write : remaining.increments.entrySet()) {
+			lines.append('\n').append(write.getKey().sql).append(" -- ").append(formatParameters(incrementParameters(write.getKey(), write.getValue())));
+		}
+
+		int amount = remaining.upserts.size() + remaining.increments.size();
+		new FileLogger(plugin, SPILL_FILE_NAME).log("Could not write " + amount + " pending writes while closing:" + lines);
+		WildCommonsPlugin.mysqlErrorLogger.log("Write-behind buffer of " + plugin.getName() + " could not write " + amount + " pending writes while closing, they were saved to " + SPILL_FILE_NAME);
+	}
+
+	/**
+	 * The delta is the first parameter of an increment, followed by the key parameters.
+	 */
+	private static Object[] incrementParameters(PendingKey key, long delta) {
+		Object[] parameters = new Object[key.parameters.length + 1];
+		parameters[0] = delta;
+		System.arraycopy(key.parameters, 0, parameters, 1, key.parameters.length);
+		return parameters;
+	}
+
+	private static String formatParameters(Object[] parameters) {
+		Object[] values = new Object[parameters.length];
+		for (int i = 0; i < parameters.length; i++) {
+			values[i] = parameters[i] instanceof Nullable ? ((Nullable) parameters[i]).getValue() : parameters[i];
+		}
+		return Arrays.toString(values);
+	}
+
+	private static <V> Map<String, Map<PendingKey, V>> groupBySql(Map<PendingKey, V> writes) {
+		Map<String, Map<PendingKey, V>> groups = new LinkedHashMap<>();
+		for (Entry<PendingKey, V> write : writes.entrySet()) {
+			groups.computeIfAbsent(write.getKey().sql, sql -> new LinkedHashMap<>()).put(write.getKey(), write.getValue());
+		}
+		return groups;
+	}
+
+	private void checkNotClosed() {
+		if (closed) {
+			throw new IllegalStateException("Write-behind buffer was closed");
+		}
+	}
+
+
+	private static class PendingWrites {
+
+		private final Map<PendingKey, Long> increments = new ConcurrentHashMap<>();
+		private final Map<PendingKey, Object[]> upserts = new ConcurrentHashMap<>();
+
+		private boolean isEmpty() {
+			return increments.isEmpty() && upserts.isEmpty();
+		}
+
+	}
+
+
+	@EqualsAndHashCode
+	private static class PendingKey {
+
+		private final String sql;
+		private final List<Object> parametersList;
+		@EqualsAndHashCode.Exclude private final Object[] parameters;
+
+		private PendingKey(String sql, Object[] parameters) {
+			this.sql = sql;
+			this.parameters = parameters != null ? parameters : new Object[0];
+			this.parametersList = Arrays.asList(this.parameters);
+		}
+
+	}
+
+}
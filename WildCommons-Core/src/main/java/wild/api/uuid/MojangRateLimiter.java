@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package wild.api.uuid;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client side token bucket for the Mojang API, so that requests wait for a slot instead of being rejected with HTTP 429.
+ * <p>
+ * Mojang allows 600 requests every 10 minutes: with a capacity of 300 and a refill of 300 tokens every 10 minutes,
+ * no window of 10 minutes can exceed the quota. Waiting requests are granted by priority, then in order of arrival.
+ * Background requests can't use the last tokens, which are kept for interactive requests,
+ * and fail immediately with {@link APILimitException} if too many of them are already waiting.
+ */
+class MojangRateLimiter {
+
+	static final int DEFAULT_CAPACITY = 300;
+	static final long DEFAULT_REFILL_INTERVAL = TimeUnit.SECONDS.toMillis(2);
+	static final int DEFAULT_INTERACTIVE_RESERVE = 50;
+	static final int DEFAULT_MAX_WAITING_BACKGROUND = 1000;
+
+	private final int capacity;
+	private final long refillIntervalNanos;
+	private final int interactiveReserve;
+	private final int maxWaitingBackground;
+	private final ScheduledExecutorService dispatcher;
+
+	private final PriorityQueue<Waiter> queue = new PriorityQueue<>(Comparator.<Waiter, RequestPriority>comparing(waiter -> waiter.priority).thenComparingLong(waiter -> waiter.sequence)); // Guarded by this
+	private double tokens; // Guarded by this
+	private long lastRefill; // Guarded by this
+	private long pausedUntil; // Guarded by this
+	private long nextDispatch; // 0 if not scheduled, guarded by this
+	private long sequence; // Guarded by this
+	private int waitingBackground; // Guarded by this
+
+
+	MojangRateLimiter() {
+		this(DEFAULT_CAPACITY, DEFAULT_REFILL_INTERVAL, DEFAULT_INTERACTIVE_RESERVE);
+	}
+
+	MojangRateLimiter(int capacity, long refillInterval, int interactiveReserve) {
+		this(capacity, refillInterval, interactiveReserve, DEFAULT_MAX_WAITING_BACKGROUND);
+	}
+
+	/**
+	 * @param capacity maximum number of requests sent in a burst
+	 * @param refillInterval milliseconds to regain one token
+	 * @param interactiveReserve tokens that only interactive requests can use
+	 * @param maxWaitingBackground background requests that can wait at the same time, the following ones are rejected
+	 */
+	MojangRateLimiter(int capacity, long refillInterval, int interactiveReserve, int maxWaitingBackground) {
+		this.capacity = capacity;
+		this.refillIntervalNanos = TimeUnit.MILLISECONDS.toNanos(refillInterval);
+		this.interactiveReserve = interactiveReserve;
+		this.maxWaitingBackground = maxWaitingBackground;
+		this.tokens = capacity;
+		this.lastRefill = System.nanoTime();
+		this.pausedUntil = lastRefill; // System.nanoTime() can be negative, it must not start paused
+		this.dispatcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "WildCommons Mojang rate limiter");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+
+	/**
+	 * Reserves a request. The future completes when the request can be sent, immediately if a token is available.
+	 * Background requests fail with {@link APILimitException} if too many are waiting (for example during a long pause).
+	 */
+	CompletableFuture<Void> acquire(RequestPriority priority) {
+		Waiter waiter;
+		synchronized (this) {
+			waiter = new Waiter(priority, sequence++);
+			if (priority == RequestPriority.BACKGROUND) {
+				if (waitingBackground >= maxWaitingBackground) {
+					waiter.future.completeExceptionally(new APILimitException());
+					return waiter.future;
+				}
+				waitingBackground++;
+			}
+			queue.add(waiter);
+		}
+		dispatch();
+		return waiter.future;
+	}
+
+	/**
+	 * To be called when the API replies with HTTP 429 anyway (for example because of other servers on the same address):
+	 * no request is granted until the pause is over.
+	 */
+	synchronized void limitReached(long pauseMillis) {
+		tokens = 0;
+		long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pauseMillis);
+		if (until - pausedUntil > 0) {
+			pausedUntil = until;
+		}
+	}
+
+	synchronized int getWaitingRequests() {
+		return queue.size();
+	}
+
+
+	private void dispatch() {
+		List<Waiter> granted = new ArrayList<>();
+
+		synchronized (this) {
+			long now = System.nanoTime();
+			refill(now);
+
+			long delay = 0;
+			while (!queue.isEmpty()) {
+				Waiter next = queue.peek();
+				int minTokens = next.priority == RequestPriority.INTERACTIVE ? 1 : interactiveReserve + 1;
+
+				if (now - pausedUntil < 0) { // nanoTime() can overflow, only differences are meaningful
+					delay = pausedUntil - now;
+					break;
+				}
+				if (tokens < minTokens) {
+					delay = (long) Math.ceil((minTokens - tokens) * refillIntervalNanos);
+					break;
+				}
+
+				queue.poll();
+				if (next.priority == RequestPriority.BACKGROUND) {
+					waitingBackground--;
+				}
+				tokens--;
+				granted.add(next);
+			}
+
+			if (!queue.isEmpty()) {
+				long dispatchAt = now + delay;
+				// A new waiter with higher priority may need an earlier dispatch than the one already scheduled
+				if (nextDispatch == 0 || dispatchAt - nextDispatch < 0) {
+					nextDispatch = dispatchAt;
+					dispatcher.schedule(() -> {
+						synchronized (this) {
+							if (nextDispatch == dispatchAt) {
+								nextDispatch = 0;
+							}
+						}
+						dispatch();
+					}, delay, TimeUnit.NANOSECONDS);
+				}
+			}
+		}
+
+		// Outside the lock, the callbacks may request other tokens
+		for (Waiter waiter : granted) {
+			waiter.future.complete(null);
+		}
+	}
+
+	private void refill(long now) {
+		// Nothing is regained while paused
+		if (now - pausedUntil < 0) {
+			lastRefill = now;
+			return;
+		}
+		if (pausedUntil - lastRefill > 0) {
+			lastRefill = pausedUntil;
+		}
+		tokens = Math.min(capacity, tokens + (double) (now - lastRefill) / refillIntervalNanos);
+		lastRefill = now;
+	}
+
+
+	private static class Waiter {
+
+		private final RequestPriority priority;
+		private final long sequence;
+		private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+		private Waiter(RequestPriority priority, long sequence) {
+			this.priority = priority;
+			this.sequence = sequence;
+		}
+
+	}
+
+}
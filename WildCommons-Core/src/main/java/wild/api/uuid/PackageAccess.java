@@ -40,4 +40,12 @@ public class PackageAccess {
 		UUIDRegistry.save();
 	}
 	
+	public static void TextureFetcher_init() {
+		TextureFetcher.init();
+	}
+	
+	public static void TextureFetcher_save() {
+		TextureFetcher.save();
+	}
+	
 }
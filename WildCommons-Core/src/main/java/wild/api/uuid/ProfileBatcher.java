@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package wild.api.uuid;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import com.google.common.collect.Lists;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import wild.core.utils.AsyncHttpClient;
+
+/**
+ * Collects the name to UUID lookups requested in a short time window and sends them together
+ * to the bulk profiles endpoint, which accepts up to 10 names for each request.<br>
+ * Each request waits for a slot of the {@link MojangRateLimiter}, with the highest priority of its lookups.
+ * Interactive lookups are sent first, the remaining space in their requests is filled with background lookups.
+ */
+class ProfileBatcher {
+
+	static final String DEFAULT_ENDPOINT = "https://api.mojang.com/profiles/minecraft";
+	static final int MAX_NAMES_PER_REQUEST = 10;
+
+	private static final long DEFAULT_WINDOW_MILLIS = 50;
+	private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(3);
+	private static final Pattern VALID_NAME_PATTERN = Pattern.compile("[a-zA-Z0-9_]{1,16}");
+
+	private final String endpoint;
+	private final long windowMillis;
+	private final MojangRateLimiter rateLimiter;
+	private final ScheduledExecutorService executor;
+
+	private final Map<String, PendingLookup> pending = new LinkedHashMap<>(); // Lower case names, guarded by this
+	private boolean flushScheduled; // Guarded by this
+	private boolean fullBatchQueued; // Guarded by this
+
+
+	ProfileBatcher(MojangRateLimiter rateLimiter) {
+		this(DEFAULT_ENDPOINT, DEFAULT_WINDOW_MILLIS, rateLimiter);
+	}
+
+	/**
+	 * @param endpoint URL of the bulk profiles API, can be changed to use a local server
+	 * @param windowMillis time to wait for other lookups before sending a request that is not full
+	 * @param rateLimiter limiter shared with the other requests to the API
+	 */
+	ProfileBatcher(String endpoint, long windowMillis, MojangRateLimiter rateLimiter) {
+		this.endpoint = endpoint;
+		this.windowMillis = windowMillis;
+		this.rateLimiter = rateLimiter;
+		this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "WildCommons profile batcher");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+
+	/**
+	 * Queues the lookup of the name. The future fails with {@link ProfileNotFoundException} if the name doesn't exist,
+	 * with {@link APILimitException} if the requests were rate limited.
+	 */
+	synchronized CompletableFuture<UUID> lookup(String playerName, RequestPriority priority) {
+		if (!VALID_NAME_PATTERN.matcher(playerName).matches()) {
+			// Invalid names would make the whole request fail
+			CompletableFuture<UUID> future = new CompletableFuture<>();
+			future.completeExceptionally(new ProfileNotFoundException());
+			return future;
+		}
+
+		String key = playerName.toLowerCase(Locale.ROOT);
+		PendingLookup lookup = pending.get(key);
+		if (lookup == null) {
+			lookup = new PendingLookup(playerName, priority);
+			pending.put(key, lookup);
+		} else if (priority.compareTo(lookup.priority) < 0) {
+			lookup.priority = priority; // Not sent yet, can still be moved ahead
+		}
+
+		if (pending.size() >= MAX_NAMES_PER_REQUEST) {
+			if (!fullBatchQueued) {
+				fullBatchQueued = true;
+				executor.execute(this::flush);
+			}
+		} else if (!flushScheduled) {
+			flushScheduled = true;
+			executor.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+		}
+
+		return lookup.future;
+	}
+
+	/**
+	 * Queues the pending lookups in the rate limiter, in requests of at most {@link #MAX_NAMES_PER_REQUEST} names.
+	 */
+	private void flush() {
+		List<PendingLookup> batch;
+
+		while (!(batch = nextBatch()).isEmpty()) {
+			List<PendingLookup> requestBatch = batch;
+			RequestPriority priority = requestBatch.get(0).priority; // The first is the most urgent
+			rateLimiter.acquire(priority).thenCompose(ignored -> request(requestBatch)).whenComplete((uuids, error) -> {
+				complete(requestBatch, uuids, error);
+			});
+		}
+	}
+
+	private void complete(List<PendingLookup> batch, Map<String, UUID> uuids, Throwable error) {
+		if (error != null) {
+			Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+			for (PendingLookup lookup : batch) {
+				lookup.future.completeExceptionally(cause);
+			}
+			return;
+		}
+
+		for (PendingLookup lookup : batch) {
+			UUID uuid = uuids.get(lookup.name.toLowerCase(Locale.ROOT));
+			if (uuid != null) {
+				lookup.future.complete(uuid);
+			} else {
+				lookup.future.completeExceptionally(new ProfileNotFoundException());
+			}
+		}
+	}
+
+	private synchronized List<PendingLookup> nextBatch() {
+		List<PendingLookup> batch = Lists.newArrayListWithCapacity(MAX_NAMES_PER_REQUEST);
+
+		for (RequestPriority priority : RequestPriority.values()) {
+			Iterator<PendingLookup> iterator = pending.values().iterator();
+			while (iterator.hasNext() && batch.size() < MAX_NAMES_PER_REQUEST) {
+				PendingLookup lookup = iterator.next();
+				if (lookup.priority == priority) {
+					batch.add(lookup);
+					iterator.remove();
+				}
+			}
+		}
+
+		if (pending.size() < MAX_NAMES_PER_REQUEST) {
+			fullBatchQueued = false;
+		}
+		if (pending.isEmpty()) {
+			flushScheduled = false;
+		}
+		return batch;
+	}
+
+	private CompletableFuture<Map<String, UUID>> request(List<PendingLookup> batch) {
+		JsonArray names = new JsonArray();
+		for (PendingLookup lookup : batch) {
+			names.add(new JsonPrimitive(lookup.name));
+		}
+
+		return AsyncHttpClient.postJson(endpoint, names, REQUEST_TIMEOUT).thenApply(response -> {
+			int statusCode = response.getStatusCode();
+			Map<String, UUID> uuids = new LinkedHashMap<>();
+
+			if (statusCode == 200) {
+				if (response.getBody() == null) {
+					return uuids; // Empty body, like 204
+				}
+				for (JsonElement element : response.getBody().getAsJsonArray()) {
+					JsonObject profile = element.getAsJsonObject();
+					uuids.put(profile.get("name").getAsString().toLowerCase(Locale.ROOT), UUIDFetcher.parseUndashedUUID(profile.get("id").getAsString()));
+				}
+				return uuids;
+
+			} else if (statusCode == 204) {
+				return uuids; // None of the names exist
+
+			} else if (statusCode == 429) {
+				throw new CompletionException(new APILimitException());
+			} else {
+				throw new RuntimeException("Unknown HTTP status code: " + statusCode);
+			}
+		});
+	}
+
+
+	private static class PendingLookup {
+
+		private final String name;
+		private final CompletableFuture<UUID> future = new CompletableFuture<>();
+		private RequestPriority priority; // Guarded by the batcher until sent
+
+		private PendingLookup(String name, RequestPriority priority) {
+			this.name = name;
+			this.priority = priority;
+		}
+
+	}
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package wild.api.uuid;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.UUID;
+
+import lombok.Getter;
+
+/**
+ * File of the textures cached by {@link TextureFetcher}.
+ * <p>
+ * Format: a header (magic number, version and number of records), then the records made of
+ * the UUID (16 bytes), the fetch timestamp (8 bytes), the length of the texture (2 bytes) and the texture in ASCII.
+ * The file is always rewritten entirely, aside and then moved over the old one (atomically if the file system allows it).
+ */
+class TextureCacheStorage {
+
+	private static final int MAGIC = 0x57544558; // "WTEX"
+	private static final byte VERSION = 1;
+	private static final int MAX_TEXTURE_LENGTH = 0xFFFF;
+
+	@Getter private final File file;
+
+
+	TextureCacheStorage(File file) {
+		this.file = file;
+	}
+
+
+	void load(RecordConsumer consumer) throws IOException {
+		if (!file.isFile()) {
+			return;
+		}
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Invalid texture cache file: " + file.getName());
+			}
+			byte version = in.readByte();
+			if (version != VERSION) {
+				throw new IOException("Unsupported texture cache file version: " + version);
+			}
+
+			int records = in.readInt();
+			byte[] textureBytes = new byte[MAX_TEXTURE_LENGTH];
+
+			for (int i = 0; i < records; i++) {
+				UUID uuid = new UUID(in.readLong(), in.readLong());
+				long fetchTimestamp = in.readLong();
+				int length = in.readUnsignedShort();
+				in.readFully(textureBytes, 0, length);
+
+				consumer.accept(uuid, new String(textureBytes, 0, length, StandardCharsets.US_ASCII), fetchTimestamp);
+			}
+		}
+	}
+
+	void save(Map<UUID, TextureData> textures) throws IOException {
+		File tempFile = new File(file.getPath() + ".tmp");
+
+		try (FileOutputStream fileOut = new FileOutputStream(tempFile)) {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeInt(textures.size());
+
+			for (Entry<UUID, TextureData> entry : textures.entrySet()) {
+				// Base64, it's always ASCII
+				byte[] textureBytes = entry.getValue().getTexture().getBytes(StandardCharsets.US_ASCII);
+
+				out.writeLong(entry.getKey().getMostSignificantBits());
+				out.writeLong(entry.getKey().getLeastSignificantBits());
+				out.writeLong(entry.getValue().getFetchTimestamp());
+				out.writeShort(textureBytes.length);
+				out.write(textureBytes);
+			}
+
+			out.flush();
+			fileOut.getFD().sync();
+		}
+
+		try {
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException | AccessDeniedException e) {
+			// Some file systems (and Windows in some cases) refuse the atomic replace, the temporary file is complete anyway
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		forceDirectory(); // Makes the rename itself survive a crash
+	}
+
+	static boolean canStore(String texture) {
+		return texture.length() <= MAX_TEXTURE_LENGTH;
+	}
+
+	/**
+	 * Makes the rename durable. Not supported on every platform, where it's skipped.
+	 */
+	private void forceDirectory() {
+		File directory = file.getAbsoluteFile().getParentFile();
+		try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// Directories can't be opened on Windows
+		}
+	}
+
+
+	interface RecordConsumer {
+
+		public void accept(UUID uuid, String texture, long fetchTimestamp);
+
+	}
+
+}
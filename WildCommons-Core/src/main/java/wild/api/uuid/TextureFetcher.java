@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package wild.api.uuid;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import wild.api.item.CustomSkullAdapter;
+import wild.core.WildCommonsPlugin;
+
+/**
+ * Fetches the skin textures of players from the session server, for {@link CustomSkullAdapter#fromEncodedTexture(String, UUID)}.<br>
+ * Textures are kept in memory and saved to a file, so that menus with many heads can be built without network requests.
+ */
+public class TextureFetcher {
+	
+	static final String DEFAULT_PROFILE_URL = "https://sessionserver.mojang.com/session/minecraft/profile/";
+	
+	private static final int CACHE_MAX_SIZE = 20000;
+	private static final long REFRESH_AGE = TimeUnit.DAYS.toMillis(1); // Skins rarely change, older textures are used while refreshed
+	private static final long MAX_DATA_AGE = TimeUnit.DAYS.toMillis(30); // Older textures are not saved
+	private static final long MAX_NOT_FOUND_AGE = TimeUnit.MINUTES.toMillis(10);
+	private static final long API_LIMIT_REACHED_COOLDOWN = TimeUnit.MINUTES.toMillis(1);
+	
+	// Not found results are only kept in memory, as null textures
+	private static final Cache<UUID, TextureData> CACHE = CacheBuilder.newBuilder()
+			.maximumSize(CACHE_MAX_SIZE)
+			.recordStats()
+			.build();
+	
+	// The session server has a lower limit than the API: 100 requests per minute, 20 reserved to interactive lookups
+	private static final MojangRateLimiter RATE_LIMITER = new MojangRateLimiter(100, 600, 20);
+	
+	// Requests in progress, shared by concurrent lookups of the same UUID
+	private static final Map<UUID, CompletableFuture<String>> REQUESTS = new ConcurrentHashMap<>();
+	
+	static volatile String profileUrl = DEFAULT_PROFILE_URL; // Can be changed to use a local server
+	
+	private static TextureCacheStorage storage;
+	private static Logger logger;
+	private static volatile boolean needSave;
+	
+	
+	/**
+	 * Returns the cached texture without blocking, null if not available.
+	 * Missing or old textures are fetched in background, to be available the next time.
+	 */
+	public static String getCachedTexture(UUID uuid) {
+		TextureData cachedTextureData = CACHE.getIfPresent(uuid);
+		long now = System.currentTimeMillis();
+		
+		if (cachedTextureData == null || !cachedTextureData.isFresh(now, cachedTextureData.isValidProfile() ? REFRESH_AGE : MAX_NOT_FOUND_AGE)) {
+			fetchTextureAsync(uuid, RequestPriority.BACKGROUND);
+		}
+		
+		return cachedTextureData != null ? cachedTextureData.getTexture() : null;
+	}
+	
+	/**
+	 * Like {@link #getCachedTexture(UUID)}, returns null if the texture is not available yet.
+	 */
+	public static CustomSkullAdapter getCachedSkull(UUID uuid) {
+		String texture = getCachedTexture(uuid);
+		return texture != null ? CustomSkullAdapter.fromEncodedTexture(texture, uuid) : null;
+	}
+	
+	/**
+	 * Fetches the skull and passes it to the consumer on the main thread.
+	 */
+	public static void fetchSkullAsync(Plugin plugin, UUID uuid, Consumer<CustomSkullAdapter> skullConsumer, UUIDExceptionHandler exceptionHandler) {
+		fetchTextureAsync(uuid).whenComplete((texture, error) -> {
+			Bukkit.getScheduler().runTask(plugin, () -> {
+				if (error == null) {
+					if (skullConsumer != null) {
+						skullConsumer.accept(CustomSkullAdapter.fromEncodedTexture(texture, uuid));
+					}
+				} else if (exceptionHandler != null) {
+					exceptionHandler.handle(unwrap(error));
+				}
+			});
+		});
+	}
+	
+	public static CompletableFuture<String> fetchTextureAsync(UUID uuid) {
+		return fetchTextureAsync(uuid, RequestPriority.INTERACTIVE);
+	}
+	
+	/**
+	 * Fetches the base64 texture without blocking: concurrent lookups of the same UUID share the same request.
+	 * The future completes on a background thread, with {@link ProfileNotFoundException} or {@link APILimitException} in case of failure.
+	 */
+	public static CompletableFuture<String> fetchTextureAsync(UUID uuid, RequestPriority priority) {
+		long now = System.currentTimeMillis();
+		TextureData cachedTextureData = CACHE.getIfPresent(uuid);
+		
+		if (cachedTextureData != null) {
+			if (cachedTextureData.isValidProfile()) {
+				if (cachedTextureData.isFresh(now, REFRESH_AGE)) {
+					return CompletableFuture.completedFuture(cachedTextureData.getTexture());
+				}
+			} else if (cachedTextureData.isFresh(now, MAX_NOT_FOUND_AGE)) {
+				CompletableFuture<String> future = new CompletableFuture<>();
+				future.completeExceptionally(new ProfileNotFoundException());
+				return future;
+			}
+		}
+		
+		CompletableFuture<String> request = new CompletableFuture<>();
+		CompletableFuture<String> inFlightRequest = REQUESTS.putIfAbsent(uuid, request);
+		if (inFlightRequest != null) {
+			return inFlightRequest;
+		}
+		
+		String url = profileUrl + uuid.toString().replace("-", "");
+		RATE_LIMITER.acquire(priority).thenCompose(ignored -> UUIDFetcher.apiRequest(url)).thenApply(TextureFetcher::getTexture).whenComplete((texture, error) -> {
+			Throwable cause = unwrap(error);
+			
+			long fetchTime = System.currentTimeMillis();
+			if (cause == null) {
+				CACHE.put(uuid, new TextureData(texture, fetchTime));
+				needSave = true;
+			} else if (cause instanceof ProfileNotFoundException) {
+				CACHE.put(uuid, new TextureData(null, fetchTime));
+			} else if (cause instanceof APILimitException) {
+				RATE_LIMITER.limitReached(API_LIMIT_REACHED_COOLDOWN);
+			}
+			REQUESTS.remove(uuid, request);
+			
+			if (cause == null) {
+				request.complete(texture);
+			} else {
+				request.completeExceptionally(cause);
+			}
+		});
+		
+		return request;
+	}
+	
+	public static CacheStats getCacheStats() {
+		return CACHE.stats();
+	}
+	
+	private static String getTexture(JsonElement response) {
+		if (response == null) {
+			throw new CompletionException(new ProfileNotFoundException()); // Empty body, like 204
+		}
+		JsonObject profile = response.getAsJsonObject();
+		
+		if (profile.has("properties")) {
+			for (JsonElement element : profile.get("properties").getAsJsonArray()) {
+				JsonObject property = element.getAsJsonObject();
+				if ("textures".equals(property.get("name").getAsString())) {
+					return property.get("value").getAsString();
+				}
+			}
+		}
+		
+		throw new CompletionException(new ProfileNotFoundException()); // No skin
+	}
+	
+	private static Throwable unwrap(Throwable error) {
+		while ((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null) {
+			error = error.getCause();
+		}
+		return error;
+	}
+	
+	protected static void init() {
+		if (storage != null) {
+			throw new IllegalArgumentException("Already initialized");
+		}
+		logger = WildCommonsPlugin.instance.getLogger();
+		storage = new TextureCacheStorage(new File(WildCommonsPlugin.instance.getDataFolder(), "skull-textures.dat"));
+		
+		long now = System.currentTimeMillis();
+		try {
+			storage.load((uuid, texture, fetchTimestamp) -> {
+				if (now - fetchTimestamp <= MAX_DATA_AGE) {
+					CACHE.put(uuid, new TextureData(texture, fetchTimestamp));
+				}
+			});
+		} catch (IOException ex) {
+			// Just a cache, the textures will be fetched again
+			logger.log(Level.WARNING, "Couldn't read the texture cache file", ex);
+		}
+		
+		Bukkit.getScheduler().runTaskTimerAsynchronously(WildCommonsPlugin.instance, () -> {
+			if (needSave) {
+				save();
+			}
+		}, 5 * 60 * 20L, 5 * 60 * 20L);
+	}
+	
+	protected static void save() {
+		if (storage == null) {
+			return;
+		}
+		
+		synchronized (storage) {
+			needSave = false;
+			long now = System.currentTimeMillis();
+			Map<UUID, TextureData> textures = new LinkedHashMap<>();
+			
+			CACHE.asMap().forEach((uuid, textureData) -> {
+				if (textureData.isValidProfile() && textureData.isFresh(now, MAX_DATA_AGE) && TextureCacheStorage.canStore(textureData.getTexture())) {
+					textures.put(uuid, textureData);
+				}
+			});
+			
+			try {
+				storage.save(textures);
+			} catch (IOException ex) {
+				logger.log(Level.WARNING, "Couldn't save the texture cache to file", ex);
+				needSave = true;
+			}
+		}
+	}
+
+}
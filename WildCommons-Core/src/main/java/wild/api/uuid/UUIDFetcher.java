@@ -28,13 +28,17 @@
 */
 package wild.api.uuid;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.HashMap;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
@@ -43,26 +47,47 @@ import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.plugin.Plugin;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 
 import wild.api.util.CaseInsensitiveMap;
 import wild.core.WildCommonsPlugin;
+import wild.core.utils.AsyncHttpClient;
 
 public class UUIDFetcher {
 	
-	private static final Map<String, UUIDData> UUID_CACHE = new CaseInsensitiveMap<>();
 	private static final int UUID_CACHE_MAX_SIZE = 500;
-	
-	private static final Map<UUID, NameData> NAME_CACHE = new HashMap<>();
 	private static final int NAME_CACHE_MAX_SIZE = 200;
 	
 	private static final long MAX_DATA_AGE = TimeUnit.MINUTES.toMillis(5);
+	private static final long MAX_NOT_FOUND_AGE = TimeUnit.MINUTES.toMillis(1); // Names not found can be registered at any time
+	
+	// Entries expire after MAX_DATA_AGE, not found results (null values) are checked against MAX_NOT_FOUND_AGE when read
+	private static final Cache<String, UUIDData> UUID_CACHE = CacheBuilder.newBuilder() // Lower case names
+			.maximumSize(UUID_CACHE_MAX_SIZE)
+			.expireAfterWrite(MAX_DATA_AGE, TimeUnit.MILLISECONDS)
+			.recordStats()
+			.build();
+	
+	private static final Cache<UUID, NameData> NAME_CACHE = CacheBuilder.newBuilder()
+			.maximumSize(NAME_CACHE_MAX_SIZE)
+			.expireAfterWrite(MAX_DATA_AGE, TimeUnit.MILLISECONDS)
+			.recordStats()
+			.build();
 	private static final long API_LIMIT_REACHED_COOLDOWN = TimeUnit.MINUTES.toMillis(1);
 	
-	private static long lastAPILimitReached;
+	// Shared by all the requests, interactive lookups go ahead of the background ones
+	private static final MojangRateLimiter RATE_LIMITER = new MojangRateLimiter();
+	private static final ProfileBatcher PROFILE_BATCHER = new ProfileBatcher(RATE_LIMITER);
+	private static final Duration API_TIMEOUT = Duration.ofSeconds(3);
+	
+	// Requests in progress, shared by concurrent lookups of the same name or UUID
+	private static final Map<String, CompletableFuture<UUID>> UUID_REQUESTS = new ConcurrentHashMap<>();
+	private static final Map<UUID, CompletableFuture<String>> NAME_REQUESTS = new ConcurrentHashMap<>();
 	
 	public static void fetchUUIDAsync(Plugin plugin, String playerName, Consumer<UUID> uuidConsumer, CommandSender exceptionHandler) {
 		fetchUUIDAsync(plugin, playerName, uuidConsumer, error -> {
@@ -78,159 +103,246 @@ public class UUIDFetcher {
 	}
 	
 	public static void fetchUUIDAsync(Plugin plugin, String playerName, Consumer<UUID> uuidConsumer, UUIDExceptionHandler exceptionHandler) {
-		Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
-			try {
-				UUID uuid = fetchUUID(playerName);
-				if (uuidConsumer != null) {
-					Bukkit.getScheduler().runTask(plugin, () -> {
+		fetchUUIDAsync(playerName).whenComplete((uuid, error) -> {
+			Bukkit.getScheduler().runTask(plugin, () -> {
+				if (error == null) {
+					if (uuidConsumer != null) {
 						uuidConsumer.accept(uuid);
-					});
+					}
+				} else if (exceptionHandler != null) {
+					exceptionHandler.handle(unwrap(error));
 				}
-			} catch (Throwable t) {
-				if (exceptionHandler != null) {
-					Bukkit.getScheduler().runTask(plugin, () -> {
-						exceptionHandler.handle(t);
-					});
-				}
-			}
+			});
 		});
 	}
 	
-	public static UUID fetchUUID(String playerName) throws APILimitException, ProfileNotFoundException, Throwable {
-		if (WildCommonsPlugin.serverInitialized && Bukkit.isPrimaryThread()) {
-			throw new IllegalStateException("Running from Bukkit primary thread");
-		}
-		
+	public static CompletableFuture<UUID> fetchUUIDAsync(String playerName) {
+		return fetchUUIDAsync(playerName, RequestPriority.INTERACTIVE);
+	}
+	
+	/**
+	 * Fetches the UUID without blocking: concurrent lookups of the same name share the same request.
+	 * If the rate limit is near, the request waits for a slot according to its priority.
+	 * The future completes on a background thread, with {@link ProfileNotFoundException} or {@link APILimitException} in case of failure.
+	 */
+	public static CompletableFuture<UUID> fetchUUIDAsync(String playerName, RequestPriority priority) {
 		long now = System.currentTimeMillis();
+		String key = playerName.toLowerCase(Locale.ROOT);
+		UUIDData cachedUUIDData = UUID_CACHE.getIfPresent(key);
 		
-		if (now - lastAPILimitReached < API_LIMIT_REACHED_COOLDOWN) {
-			throw new APILimitException();
-		}
-		
-		UUIDData cachedUUIDData = getUUIDFromCache(playerName);
-		
-		if (cachedUUIDData != null && cachedUUIDData.isFresh(now, MAX_DATA_AGE)) {
+		if (cachedUUIDData != null) {
 			if (cachedUUIDData.isValidProfile()) {
-				return cachedUUIDData.getUuid();
-			} else {
-				throw new ProfileNotFoundException();
+				return CompletableFuture.completedFuture(cachedUUIDData.getUuid());
+			} else if (cachedUUIDData.isFresh(now, MAX_NOT_FOUND_AGE)) {
+				return failedFuture(new ProfileNotFoundException());
 			}
 		}
 		
-		try {
-			UUID uuid = getFreshUUID(playerName);
-			putUUIDInCache(playerName, new UUIDData(uuid, now), now);
-			return uuid;
+		CompletableFuture<UUID> request = new CompletableFuture<>();
+		CompletableFuture<UUID> inFlightRequest = UUID_REQUESTS.putIfAbsent(key, request);
+		if (inFlightRequest != null) {
+			return inFlightRequest;
+		}
+		
+		// Sent together with the other lookups requested at the same time
+		PROFILE_BATCHER.lookup(playerName, priority).whenComplete((uuid, error) -> {
+			long fetchTime = System.currentTimeMillis();
+			Throwable cause = unwrap(error);
 			
-		} catch (APILimitException e) {
-			lastAPILimitReached = now;
-			throw e;
+			// The cache is updated before removing the request, so that new callers find the result
+			if (cause == null) {
+				UUID_CACHE.put(key, new UUIDData(uuid, fetchTime));
+			} else if (cause instanceof ProfileNotFoundException) {
+				UUID_CACHE.put(key, new UUIDData(null, fetchTime));
+			} else if (cause instanceof APILimitException) {
+				RATE_LIMITER.limitReached(API_LIMIT_REACHED_COOLDOWN);
+			}
+			UUID_REQUESTS.remove(key, request);
 			
-		} catch (ProfileNotFoundException e) {
-			putUUIDInCache(playerName, new UUIDData(null, now), now);
-			throw e;
+			if (cause == null) {
+				request.complete(uuid);
+			} else {
+				request.completeExceptionally(cause);
+			}
+		});
+		
+		return request;
+	}
+	
+	public static UUID fetchUUID(String playerName) throws APILimitException, ProfileNotFoundException, Throwable {
+		if (WildCommonsPlugin.serverInitialized && Bukkit.isPrimaryThread()) {
+			throw new IllegalStateException("Running from Bukkit primary thread");
 		}
+		
+		return await(fetchUUIDAsync(playerName));
 	}
 	
-	public static String fetchName(UUID uuid) throws APILimitException, ProfileNotFoundException, Throwable {
+	/**
+	 * Fetches the UUIDs of many names at once: lookups are sent together, 10 names for each request.
+	 * Names that don't exist are missing from the returned map, which is case insensitive.
+	 */
+	public static Map<String, UUID> fetchUUIDs(Collection<String> playerNames) throws APILimitException, Throwable {
+		return fetchUUIDs(playerNames, RequestPriority.INTERACTIVE);
+	}
+	
+	public static Map<String, UUID> fetchUUIDs(Collection<String> playerNames, RequestPriority priority) throws APILimitException, Throwable {
 		if (WildCommonsPlugin.serverInitialized && Bukkit.isPrimaryThread()) {
 			throw new IllegalStateException("Running from Bukkit primary thread");
 		}
 		
-		long now = System.currentTimeMillis();
+		Map<String, CompletableFuture<UUID>> lookups = new LinkedHashMap<>();
+		for (String playerName : playerNames) {
+			lookups.put(playerName, fetchUUIDAsync(playerName, priority));
+		}
 		
-		if (now - lastAPILimitReached < API_LIMIT_REACHED_COOLDOWN) {
-			throw new APILimitException();
+		Map<String, UUID> uuids = new CaseInsensitiveMap<>();
+		for (Entry<String, CompletableFuture<UUID>> lookup : lookups.entrySet()) {
+			try {
+				uuids.put(lookup.getKey(), await(lookup.getValue()));
+			} catch (ProfileNotFoundException e) {
+				// Not included
+			}
 		}
 		
-		NameData cachedNameData = getNameFromCache(uuid);
+		return uuids;
+	}
+	
+	public static CompletableFuture<String> fetchNameAsync(UUID uuid) {
+		return fetchNameAsync(uuid, RequestPriority.INTERACTIVE);
+	}
+	
+	/**
+	 * Fetches the name without blocking the caller: concurrent lookups of the same UUID share the same request.
+	 * If the rate limit is near, the request waits for a slot according to its priority.
+	 * The future completes on a background thread, with {@link ProfileNotFoundException} or {@link APILimitException} in case of failure.
+	 */
+	public static CompletableFuture<String> fetchNameAsync(UUID uuid, RequestPriority priority) {
+		long now = System.currentTimeMillis();
+		NameData cachedNameData = NAME_CACHE.getIfPresent(uuid);
 		
-		if (cachedNameData != null && cachedNameData.isFresh(now, MAX_DATA_AGE)) {
+		if (cachedNameData != null) {
 			if (cachedNameData.isValidProfile()) {
-				return cachedNameData.getName();
-			} else {
-				throw new ProfileNotFoundException();
+				return CompletableFuture.completedFuture(cachedNameData.getName());
+			} else if (cachedNameData.isFresh(now, MAX_NOT_FOUND_AGE)) {
+				return failedFuture(new ProfileNotFoundException());
 			}
 		}
 		
-		try {
-			String name = getFreshName(uuid);
-			putNameInCache(uuid, new NameData(name, now), now);
-			return name;
+		CompletableFuture<String> request = new CompletableFuture<>();
+		CompletableFuture<String> inFlightRequest = NAME_REQUESTS.putIfAbsent(uuid, request);
+		if (inFlightRequest != null) {
+			return inFlightRequest;
+		}
+		
+		String url = "https://api.mojang.com/user/profiles/" + uuid.toString().replace("-", "") + "/names";
+		RATE_LIMITER.acquire(priority).thenCompose(ignored -> apiRequest(url)).thenApply(UUIDFetcher::getLastName).whenComplete((name, error) -> {
+			Throwable cause = unwrap(error);
 			
-		} catch (APILimitException e) {
-			lastAPILimitReached = now;
-			throw e;
+			long fetchTime = System.currentTimeMillis();
+			if (cause == null) {
+				NAME_CACHE.put(uuid, new NameData(name, fetchTime));
+			} else if (cause instanceof ProfileNotFoundException) {
+				NAME_CACHE.put(uuid, new NameData(null, fetchTime));
+			} else if (cause instanceof APILimitException) {
+				RATE_LIMITER.limitReached(API_LIMIT_REACHED_COOLDOWN);
+			}
+			NAME_REQUESTS.remove(uuid, request);
 			
-		} catch (ProfileNotFoundException e) {
-			putNameInCache(uuid, new NameData(null, now), now);
-			throw e;
-		}
+			if (cause == null) {
+				request.complete(name);
+			} else {
+				request.completeExceptionally(cause);
+			}
+		});
+		
+		return request;
 	}
 	
-	private static UUIDData getUUIDFromCache(String playerName) {
-		synchronized (UUID_CACHE) {
-			return UUID_CACHE.get(playerName);
-		}
+	public static String fetchName(UUID uuid) throws APILimitException, ProfileNotFoundException, Throwable {
+		return fetchName(uuid, RequestPriority.INTERACTIVE);
 	}
 	
-	private static void putUUIDInCache(String playerName, UUIDData uuidData, long now) {
-		synchronized (UUID_CACHE) {
-			UUID_CACHE.put(playerName, uuidData);
-			if (UUID_CACHE.size() > UUID_CACHE_MAX_SIZE) {
-				UUID_CACHE.values().removeIf(u -> !u.isFresh(now, MAX_DATA_AGE));
-			}
+	public static String fetchName(UUID uuid, RequestPriority priority) throws APILimitException, ProfileNotFoundException, Throwable {
+		if (WildCommonsPlugin.serverInitialized && Bukkit.isPrimaryThread()) {
+			throw new IllegalStateException("Running from Bukkit primary thread");
 		}
+		
+		return await(fetchNameAsync(uuid, priority));
+	}
+	
+	/**
+	 * Statistics of the name to UUID cache, not found results included.
+	 */
+	public static CacheStats getUUIDCacheStats() {
+		return UUID_CACHE.stats();
+	}
+	
+	/**
+	 * Statistics of the UUID to name cache, not found results included.
+	 */
+	public static CacheStats getNameCacheStats() {
+		return NAME_CACHE.stats();
+	}
+	
+	/**
+	 * Requests waiting for a slot of the client side rate limit.
+	 */
+	public static int getWaitingRequests() {
+		return RATE_LIMITER.getWaitingRequests();
 	}
 	
-	private static NameData getNameFromCache(UUID uuid) {
-		synchronized (NAME_CACHE) {
-			return NAME_CACHE.get(uuid);
+	private static <T> T await(CompletableFuture<T> future) throws Throwable {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			throw unwrap(e);
 		}
 	}
 	
-	private static void putNameInCache(UUID uuid, NameData nameData, long now) {
-		synchronized (NAME_CACHE) {
-			NAME_CACHE.put(uuid, nameData);
-			if (NAME_CACHE.size() > NAME_CACHE_MAX_SIZE) {
-				NAME_CACHE.values().removeIf(n -> !n.isFresh(now, MAX_DATA_AGE));
-			}
+	private static Throwable unwrap(Throwable error) {
+		while ((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null) {
+			error = error.getCause();
 		}
+		return error;
 	}
 	
-	private static UUID getFreshUUID(String playerName) throws APILimitException, ProfileNotFoundException, Throwable {
-		JsonObject response = (JsonObject) apiRequest("https://api.mojang.com/users/profiles/minecraft/" + playerName);
-		return UUID.fromString(addDashes(response.get("id").getAsString()));
+	private static <T> CompletableFuture<T> failedFuture(Throwable error) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		future.completeExceptionally(error);
+		return future;
 	}
 	
-	private static String getFreshName(UUID uuid) throws APILimitException, ProfileNotFoundException, Throwable {
-		JsonArray response = (JsonArray) apiRequest("https://api.mojang.com/user/profiles/" + uuid.toString().replace("-", "") + "/names");
-		JsonObject lastName = (JsonObject) response.get(response.size() - 1);
+	private static String getLastName(JsonElement response) {
+		JsonArray names = response.getAsJsonArray();
+		JsonObject lastName = names.get(names.size() - 1).getAsJsonObject();
 		return lastName.get("name").getAsString();
 	}
 	
-	private static JsonElement apiRequest(String url) throws APILimitException, ProfileNotFoundException, Throwable {
-		HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
-		conn.setReadTimeout(3000);
-		conn.setConnectTimeout(2000);
-		conn.setRequestMethod("GET");
-
-		int statusCode = conn.getResponseCode();
-		
-		if (statusCode == 200) {
-			try (BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()))) {
-				return new JsonParser().parse(in);
-			}
-		} else if (statusCode == 204) {
-			throw new ProfileNotFoundException();
+	/**
+	 * GET request to the Mojang API. The future fails with {@link ProfileNotFoundException} if there's no content,
+	 * with {@link APILimitException} if the request was rate limited.
+	 */
+	static CompletableFuture<JsonElement> apiRequest(String url) {
+		return AsyncHttpClient.getJson(url, API_TIMEOUT).thenApply(response -> {
+			int statusCode = response.getStatusCode();
 			
-		} else if (statusCode == 429) {
-			throw new APILimitException();
-		} else {
-			throw new RuntimeException("Unknown HTTP status code: " + statusCode);
-		}
+			if (statusCode == 200) {
+				return response.getBody();
+			} else if (statusCode == 204 || statusCode == 404) {
+				throw new CompletionException(new ProfileNotFoundException());
+				
+			} else if (statusCode == 429) {
+				throw new CompletionException(new APILimitException());
+			} else {
+				throw new RuntimeException("Unknown HTTP status code: " + statusCode);
+			}
+		});
 	}
 
+	static UUID parseUndashedUUID(String uuid) {
+		return UUID.fromString(addDashes(uuid));
+	}
+	
 	private static String addDashes(String uuid) {
 		StringBuilder sb = new StringBuilder(uuid);
 	    sb.insert(8, "-");
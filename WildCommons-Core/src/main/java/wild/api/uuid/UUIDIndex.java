@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package wild.api.uuid;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Bidirectional UUID-name index used by {@link UUIDRegistry}, names are compared ignoring case.<br>
+ * Reads don't take any lock and never wait for writers. Writes are serialized on the index itself,
+ * so callers can synchronize on it to make a sequence of reads and writes atomic.<br>
+ * Names are kept sorted, to find the ones starting with a prefix in logarithmic time.
+ */
+class UUIDIndex {
+
+	private final Map<UUID, String> namesByUUID = new ConcurrentHashMap<>();
+	private final NavigableMap<String, UUID> uuidsByName = new ConcurrentSkipListMap<>(); // Keys are lower case, sorted for prefix searches
+
+
+	String getName(UUID uuid) {
+		return namesByUUID.get(uuid);
+	}
+
+	UUID getUUID(String name) {
+		return uuidsByName.get(foldCase(name));
+	}
+
+	/**
+	 * Names starting with the prefix (ignoring case), in alphabetical order.
+	 */
+	List<String> namesStartingWith(String prefix, int limit) {
+		if (limit <= 0) {
+			return new ArrayList<>();
+		}
+		String key = foldCase(prefix);
+		List<String> names = new ArrayList<>(Math.min(limit, 16));
+
+		for (Entry<String, UUID> entry : uuidsByName.tailMap(key, true).entrySet()) {
+			if (names.size() >= limit || !entry.getKey().startsWith(key)) {
+				break;
+			}
+			String name = namesByUUID.get(entry.getValue());
+			if (name != null) { // Could be changing concurrently
+				names.add(name);
+			}
+		}
+		return names;
+	}
+
+	boolean containsUUID(UUID uuid) {
+		return namesByUUID.containsKey(uuid);
+	}
+
+	int size() {
+		return namesByUUID.size();
+	}
+
+	/**
+	 * Associates the name to the UUID, replacing the previous name of the UUID.
+	 * Like {@link com.google.common.collect.BiMap#put(Object, Object)}, fails if the name is already associated with another UUID.
+	 */
+	synchronized void put(UUID uuid, String name) {
+		String key = foldCase(name);
+		UUID owner = uuidsByName.get(key);
+		if (owner != null && !owner.equals(uuid)) {
+			throw new IllegalArgumentException("Name " + name + " is already associated with " + owner);
+		}
+
+		String previousName = namesByUUID.put(uuid, name);
+		uuidsByName.put(key, uuid);
+		if (previousName != null && !foldCase(previousName).equals(key)) {
+			uuidsByName.remove(foldCase(previousName), uuid);
+		}
+	}
+
+	/**
+	 * Loads the associations into the empty index, in a single pass.
+	 * Names claimed by more than one UUID are not associated to any of them.
+	 * @return the UUIDs left out because of conflicts
+	 */
+	synchronized Set<UUID> load(Map<UUID, String> associations) {
+		if (!namesByUUID.isEmpty()) {
+			throw new IllegalStateException("Index is not empty");
+		}
+
+		int capacity = associations.size() * 4 / 3 + 1;
+		Map<String, UUID> uuids = new HashMap<>(capacity);
+		Set<UUID> conflictingUUIDs = new LinkedHashSet<>();
+
+		for (Entry<UUID, String> entry : associations.entrySet()) {
+			UUID owner = uuids.putIfAbsent(foldCase(entry.getValue()), entry.getKey());
+			if (owner != null) {
+				conflictingUUIDs.add(owner);
+				conflictingUUIDs.add(entry.getKey());
+			}
+		}
+
+		Map<UUID, String> names = new HashMap<>(capacity);
+		for (Entry<UUID, String> entry : associations.entrySet()) {
+			if (!conflictingUUIDs.contains(entry.getKey())) {
+				names.put(entry.getKey(), entry.getValue());
+			}
+		}
+		uuids.values().removeAll(conflictingUUIDs);
+
+		// Sorted in parallel, insertions in order are faster
+		String[] sortedNames = uuids.keySet().toArray(new String[uuids.size()]);
+		Arrays.parallelSort(sortedNames);
+		for (String name : sortedNames) {
+			uuidsByName.put(name, uuids.get(name));
+		}
+		namesByUUID.putAll(names);
+		return conflictingUUIDs;
+	}
+
+	/**
+	 * Removes the association of the name, returning the UUID it was associated with.
+	 */
+	synchronized UUID removeName(String name) {
+		UUID uuid = uuidsByName.remove(foldCase(name));
+		if (uuid != null) {
+			namesByUUID.remove(uuid);
+		}
+		return uuid;
+	}
+
+	/**
+	 * Iterates the associations. Synchronize on the index to exclude concurrent changes.
+	 */
+	void forEach(BiConsumer<UUID, String> action) {
+		namesByUUID.forEach(action);
+	}
+
+	static String foldCase(String name) {
+		return name.toLowerCase(Locale.ROOT);
+	}
+
+}
@@ -28,16 +28,14 @@
 */
 package wild.api.uuid;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -49,22 +47,20 @@ import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerLoginEvent;
 
-import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBiMap;
-
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
-import wild.api.util.CIString;
 import wild.core.WildCommonsPlugin;
 
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public class UUIDRegistry implements Listener {
 
-	private static File saveFile;
-	private static BiMap<UUID, CIString> uuidToNames;
+	private static UUIDRegistryStorage storage;
+	private static UUIDIndex index; // Lock-free reads, compound changes synchronize on it
+	private static Map<UUID, String> pendingChanges; // Not saved yet, null values are removals. Guarded by index
 	private static Logger logger;
 	
-	private static boolean needSave;
+	private static volatile boolean needSave;
+	private static volatile boolean needCompaction;
 	
 	
 	public static void syncLoadUUIDs(Collection<UUID> uuids) {
@@ -79,9 +75,7 @@ public class UUIDRegistry implements Listener {
 	
 	
 	public static boolean containsUUID(UUID uuid) {
-		synchronized (uuidToNames) {
-			return uuidToNames.containsKey(uuid);
-		}
+		return index.containsUUID(uuid);
 	}
 	
 	
@@ -91,17 +85,7 @@ public class UUIDRegistry implements Listener {
 			return onlinePlayer.getName();
 		}
 		
-		CIString ciName;
-		
-		synchronized (uuidToNames) {
-			ciName = uuidToNames.get(uuid);
-		}
-		
-		if (ciName != null) {
-			return ciName.toString();
-		} else {
-			return null;
-		}
+		return index.getName(uuid);
 	}
 	
 	public static String getNameFallback(UUID uuid) {
@@ -119,10 +103,15 @@ public class UUIDRegistry implements Listener {
 			return onlinePlayer.getUniqueId();
 		}
 		
-		CIString ciName = new CIString(name);
-		synchronized (uuidToNames) {
-			return uuidToNames.inverse().get(ciName);
-		}
+		return index.getUUID(name);
+	}
+	
+	/**
+	 * Registered names starting with the prefix, ignoring case, in alphabetical order. For tab completion of offline players.
+	 * Returns an empty list if the limit is not positive.
+	 */
+	public static List<String> namesStartingWith(String prefix, int limit) {
+		return index.namesStartingWith(prefix, limit);
 	}
 	
 	
@@ -133,11 +122,10 @@ public class UUIDRegistry implements Listener {
 	
 
 	private static void registerAssociation(UUID uuid, String name, boolean isGuaranteedFresh, boolean resolveConflictsAsync) {
-		CIString ciName = new CIString(name);
 		boolean resolveConflicts = false;
 		UUID previousAssociatedUUID;
 		
-		synchronized (uuidToNames) {
+		synchronized (index) {
 			/*
 			 * Note: if the UUID already exists with a different name, it's either:
 			 * - being updated because a player with that UUID joined
@@ -146,11 +134,12 @@ public class UUIDRegistry implements Listener {
 			 * In both cases it shouldn't be relevant and it shouldn't trigger an update.
 			 * We only check if a name exists with a different UUID, in that case we should update both UUIDs.
 			 */
-			previousAssociatedUUID = uuidToNames.inverse().get(ciName);
+			previousAssociatedUUID = index.getUUID(name);
 			
 			if (previousAssociatedUUID == null) {
 				// Ok, new association
-				uuidToNames.put(uuid, ciName);
+				index.put(uuid, name);
+				pendingChanges.put(uuid, name);
 				needSave = true;
 				
 			} else if (previousAssociatedUUID.equals(uuid)) {
@@ -158,10 +147,12 @@ public class UUIDRegistry implements Listener {
 				
 			} else {
 				// Conflict, this name is associated with a different UUID
-				uuidToNames.inverse().remove(ciName);
+				index.removeName(name);
+				pendingChanges.put(previousAssociatedUUID, null);
 				if (isGuaranteedFresh) {
 					// If this association is guaranteed to be fresh, not need to check with Mojang API
-					uuidToNames.put(uuid, ciName);
+					index.put(uuid, name);
+					pendingChanges.put(uuid, name);
 				}
 				resolveConflicts = true;
 				needSave = true;
@@ -194,7 +185,7 @@ public class UUIDRegistry implements Listener {
 
 	private static void updateAssociation(UUID uuid, int attemptNumber) {
 		try {
-			String name = UUIDFetcher.fetchName(uuid);
+			String name = UUIDFetcher.fetchName(uuid, RequestPriority.BACKGROUND); // Commands go first
 			logger.info("Fetched online name for UUID " + uuid + ": " + name);
 			registerAssociation(uuid, name, true, true); // Resolve new eventual conflicts async
 			
@@ -216,66 +207,127 @@ public class UUIDRegistry implements Listener {
 	}
 	
 	protected static void init() throws IOException {
-		if (saveFile != null) {
+		if (storage != null) {
 			throw new IllegalArgumentException("Already initialized");
 		}
-		saveFile = new File(WildCommonsPlugin.instance.getDataFolder(), "uuid-registry.csv");
-		uuidToNames = HashBiMap.create();
 		logger = WildCommonsPlugin.instance.getLogger();
+		storage = new UUIDRegistryStorage(new File(WildCommonsPlugin.instance.getDataFolder(), "uuid-registry.dat"), logger);
+		index = new UUIDIndex();
+		pendingChanges = new LinkedHashMap<>();
+		
+		File legacyFile = new File(WildCommonsPlugin.instance.getDataFolder(), "uuid-registry.csv");
+		boolean migrate = !storage.exists() && legacyFile.isFile();
+		Set<UUID> conflicts;
 		
-		synchronized (saveFile) {
-			if (!saveFile.exists()) {
-				saveFile.createNewFile();
+		synchronized (storage) {
+			Map<UUID, String> loadedNames;
+			if (migrate) {
+				logger.info("Converting " + legacyFile.getName() + " to " + storage.getFile().getName());
+				loadedNames = UUIDRegistryStorage.loadLegacyFile(legacyFile, logger);
+			} else {
+				loadedNames = storage.load();
 			}
-
-			try (final BufferedReader reader = new BufferedReader(new FileReader(saveFile))) {
-				String line;
-				while ((line = reader.readLine()) != null) {
-					final String[] values = line.split(",");
-					if (values.length != 2) {
-						logger.warning("Found bad line in the UUID registry save file: " + line);
-						continue;
-					}
-					final UUID uuid = UUID.fromString(values[0]);
-					final String name = values[1];
-					registerAssociation(uuid, name, false, false);
-				}
+			
+			synchronized (index) {
+				conflicts = index.load(loadedNames);
+				pendingChanges.clear();
+				needSave = false;
+				// Loaded associations are already in the file, rewrite it only if conflicts removed something.
+				// As before, a name claimed by more than one UUID is removed from all of them
+				needCompaction = migrate || !conflicts.isEmpty();
+			}
+			
+			if (needCompaction) {
+				compact();
+			}
+			if (migrate && storage.exists()) {
+				legacyFile.renameTo(new File(legacyFile.getPath() + ".old"));
 			}
 		}
 		
+		if (!conflicts.isEmpty()) {
+			// Every UUID that shared a name is fetched again from Mojang, without delaying the startup
+			logger.info("Resolving " + conflicts.size() + " UUID conflicts found in the UUID registry");
+			runTaskAsync(() -> conflicts.forEach(UUIDRegistry::updateAssociation));
+		}
+		
 		Bukkit.getPluginManager().registerEvents(new UUIDRegistry(), WildCommonsPlugin.instance);
+		// Saving only appends the changes, it can be frequent. Compaction also runs here, away from the main thread
 		Bukkit.getScheduler().runTaskTimerAsynchronously(WildCommonsPlugin.instance, () -> {
 			if (needSave) {
 				save();
 			}
-		}, 5 * 60 * 20L, 5 * 60 * 20L);
+			synchronized (storage) {
+				if (storage.needsCompaction(index.size())) {
+					compact();
+				}
+			}
+		}, 60 * 20L, 60 * 20L);
 	}
-
+	
+	/**
+	 * Appends the changes since the last save to the file, the cost depends only on the number of changes.
+	 */
 	protected static void save() {
-		Map<UUID, CIString> uuidToNamesCopy;
-		
-		synchronized (uuidToNames) {
-			uuidToNamesCopy = new HashMap<>(uuidToNames);
-		}
-		
-		try {
-			synchronized (saveFile) {
-				if (!saveFile.exists()) {
-					saveFile.createNewFile();
+		synchronized (storage) {
+			if (needCompaction) {
+				// The last compaction failed, the changes are not in pendingChanges anymore
+				compact();
+				return;
+			}
+			
+			Map<UUID, String> records;
+			synchronized (index) {
+				needSave = false;
+				if (pendingChanges.isEmpty()) {
+					return;
 				}
-	
-				try (final BufferedWriter writer = new BufferedWriter(new FileWriter(saveFile))) {
-					for (Entry<UUID, CIString> entry : uuidToNamesCopy.entrySet()) {
-						UUID uuid = entry.getKey();
-						CIString ciName = entry.getValue();
-						writer.append(uuid.toString() + "," + ciName.toString());
-						writer.newLine();
+				records = new LinkedHashMap<>(pendingChanges);
+				pendingChanges.clear();
+			}
+			
+			try {
+				storage.append(records);
+			} catch (IOException ex) {
+				logger.log(Level.SEVERE, "Couldn't save UUID registry to file", ex);
+				
+				synchronized (index) {
+					for (Entry<UUID, String> entry : records.entrySet()) {
+						// Newer changes made in the meantime win
+						if (!pendingChanges.containsKey(entry.getKey())) {
+							pendingChanges.put(entry.getKey(), entry.getValue());
+						}
 					}
+					needSave = true;
 				}
+			}
+		}
+	}
+	
+	/**
+	 * Rewrites the file with only the current associations, pending changes included.
+	 */
+	private static void compact() {
+		synchronized (storage) {
+			Map<UUID, String> associations = new LinkedHashMap<>();
+			
+			synchronized (index) {
+				index.forEach(associations::put);
+				pendingChanges.clear();
 				needSave = false;
-			}				
-		} catch (IOException ex) {
-			logger.log(Level.SEVERE, "Couldn't save UUID registry to file", ex);
+				needCompaction = false;
+			}
+			
+			try {
+				storage.compact(associations);
+			} catch (IOException ex) {
+				logger.log(Level.SEVERE, "Couldn't compact UUID registry file", ex);
+				
+				synchronized (index) {
+					needCompaction = true; // The next attempt takes a new copy of all the associations
+					needSave = true;
+				}
+			}
 		}
 	}
 	
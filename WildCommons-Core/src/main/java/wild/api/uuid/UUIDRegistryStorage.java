@@ -0,0 +1,389 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package wild.api.uuid;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import lombok.Getter;
+
+/**
+ * Append-only binary log of UUID-name associations, used by {@link UUIDRegistry}.
+ * <p>
+ * Format: a header (magic number and version), then a sequence of records made of
+ * the UUID (16 bytes), the length of the name in UTF-8 (1 byte) and the name.
+ * A record with length 0 removes the UUID. When reading, the last record of each UUID wins.
+ * Since the file only grows, it's rewritten with just the current associations when the records are too many.
+ * <p>
+ * Every write is forced to disk before returning: once {@link #append(Map)} or {@link #compact(Map)} succeed, the changes survive a crash.
+ */
+class UUIDRegistryStorage {
+
+	private static final int MAGIC = 0x57554944; // "WUID"
+	private static final byte VERSION = 1;
+	private static final int HEADER_SIZE = 5;
+
+	private static final int RECORD_HEADER_SIZE = 17;
+	private static final int MAX_NAME_LENGTH = 255;
+	private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+	private static final int RECORDS_PER_CHUNK = 32 * 1024; // Decoded by a single task when loading
+	private static final int MIN_CSV_RANGE_SIZE = 256 * 1024;
+
+	private static final int MIN_GARBAGE_FOR_COMPACTION = 1000;
+	private static final int COMPACTION_RATIO = 2; // Records in the file for each association
+
+	@Getter private final File file;
+	private final Logger logger;
+
+	/**
+	 * Records in the file, including the ones replaced by newer records.
+	 */
+	@Getter private long recordCount;
+
+
+	UUIDRegistryStorage(File file, Logger logger) {
+		this.file = file;
+		this.logger = logger;
+	}
+
+
+	boolean exists() {
+		return file.isFile() && file.length() > 0;
+	}
+
+	/**
+	 * Reads the current associations. An incomplete record at the end (interrupted write) is discarded.
+	 * The file is read in a heap buffer, not mapped: a mapping would prevent truncating or replacing the file on some platforms.
+	 * <p>
+	 * A sequential scan only reads the lengths to find the boundaries of the chunks,
+	 * which are then decoded in parallel and merged in order, so that the last record of each UUID still wins.
+	 */
+	Map<UUID, String> load() throws IOException {
+		if (!exists()) {
+			compact(Collections.emptyMap());
+			return new LinkedHashMap<>();
+		}
+
+		long size;
+		int validEnd;
+		long records = 0;
+		List<Chunk> chunks = new ArrayList<>();
+		List<Map<UUID, String>> decodedChunks;
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("UUID registry file is too large (" + size + " bytes)");
+			}
+
+			ByteBuffer buffer = ByteBuffer.allocate((int) size);
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer) < 0) {
+					break;
+				}
+			}
+			buffer.flip();
+			size = buffer.limit(); // In case the file was shorter than expected
+			checkHeader(buffer);
+
+			int position = buffer.position();
+			Chunk chunk = null;
+			while (size - position >= RECORD_HEADER_SIZE) {
+				int length = buffer.get(position + RECORD_HEADER_SIZE - 1) & 0xFF;
+				if (size - position - RECORD_HEADER_SIZE < length) {
+					break;
+				}
+
+				if (chunk == null || chunk.records == RECORDS_PER_CHUNK) {
+					chunk = new Chunk(position);
+					chunks.add(chunk);
+				}
+				chunk.records++;
+				records++;
+				position += RECORD_HEADER_SIZE + length;
+			}
+			validEnd = position;
+
+			decodedChunks = chunks.parallelStream().map(decodingChunk -> decode(buffer, decodingChunk)).collect(Collectors.toList());
+		}
+
+		if (validEnd < size) {
+			logger.warning("Discarded incomplete record at the end of the UUID registry file (" + (size - validEnd) + " bytes)");
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+				channel.truncate(validEnd);
+			}
+		}
+
+		Map<UUID, String> associations = new LinkedHashMap<>();
+		for (Map<UUID, String> decodedChunk : decodedChunks) {
+			for (Entry<UUID, String> entry : decodedChunk.entrySet()) {
+				if (entry.getValue() != null) {
+					associations.put(entry.getKey(), entry.getValue());
+				} else {
+					associations.remove(entry.getKey());
+				}
+			}
+		}
+
+		recordCount = records;
+		return associations;
+	}
+
+	/**
+	 * Records of the chunk, in order. Null names are removals.
+	 */
+	private static Map<UUID, String> decode(ByteBuffer buffer, Chunk chunk) {
+		ByteBuffer view = buffer.duplicate(); // Own position, shared content
+		view.position(chunk.start);
+
+		Map<UUID, String> records = new LinkedHashMap<>();
+		byte[] nameBytes = new byte[MAX_NAME_LENGTH];
+
+		for (int i = 0; i < chunk.records; i++) {
+			long mostSigBits = view.getLong();
+			long leastSigBits = view.getLong();
+			int length = view.get() & 0xFF;
+
+			String name = null;
+			if (length > 0) {
+				view.get(nameBytes, 0, length);
+				name = new String(nameBytes, 0, length, StandardCharsets.UTF_8);
+			}
+
+			records.put(new UUID(mostSigBits, leastSigBits), name);
+		}
+		return records;
+	}
+
+	/**
+	 * Reads the old CSV format (UUID,name for each line). The file is split in ranges that end on a new line,
+	 * parsed in parallel and merged in order: later lines win.
+	 */
+	static Map<UUID, String> loadLegacyFile(File legacyFile, Logger logger) throws IOException {
+		byte[] content = Files.readAllBytes(legacyFile.toPath());
+		int ranges = Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism(), content.length / MIN_CSV_RANGE_SIZE));
+
+		List<int[]> bounds = new ArrayList<>();
+		int start = 0;
+		for (int i = 1; i <= ranges && start < content.length; i++) {
+			int end = i == ranges ? content.length : (int) ((long) content.length * i / ranges);
+			while (end < content.length && content[end - 1] != '\n') {
+				end++;
+			}
+			if (end > start) {
+				bounds.add(new int[] {start, end});
+				start = end;
+			}
+		}
+
+		List<Map<UUID, String>> parsedRanges = bounds.parallelStream().map(range -> {
+			Map<UUID, String> associations = new LinkedHashMap<>();
+			String text = new String(content, range[0], range[1] - range[0], StandardCharsets.UTF_8);
+
+			for (String line : text.split("\r?\n")) {
+				if (line.isEmpty()) {
+					continue;
+				}
+				String[] values = line.split(",");
+				if (values.length != 2) {
+					logger.warning("Found bad line in the UUID registry save file: " + line);
+					continue;
+				}
+				try {
+					associations.put(UUID.fromString(values[0]), values[1]);
+				} catch (IllegalArgumentException e) {
+					logger.warning("Found bad UUID in the UUID registry save file: " + line);
+				}
+			}
+			return associations;
+		}).collect(Collectors.toList());
+
+		Map<UUID, String> associations = new LinkedHashMap<>();
+		for (Map<UUID, String> parsedRange : parsedRanges) {
+			associations.putAll(parsedRange);
+		}
+		return associations;
+	}
+
+	/**
+	 * Appends the changes at the end of the file. A null name is written as a removal.
+	 * If the write fails the file is truncated back to its previous size: a torn record followed by
+	 * the records of the next save could not be read anymore, as only a torn record at the end is discarded.
+	 */
+	void append(Map<UUID, String> changes) throws IOException {
+		if (changes.isEmpty()) {
+			return;
+		}
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+			long start = channel.size();
+			long written;
+			try {
+				written = writeRecords(channel, changes);
+				channel.force(false); // Also writes the new size, needed to read the records
+			} catch (IOException | RuntimeException e) {
+				try {
+					channel.truncate(start);
+				} catch (IOException truncateException) {
+					e.addSuppressed(truncateException); // The torn record is discarded by the next load
+				}
+				throw e;
+			}
+			recordCount += written;
+		}
+	}
+
+	/**
+	 * Rewrites the file with only the given associations. The new file is written aside, then moved over the old one,
+	 * atomically if the file system allows it.
+	 */
+	void compact(Map<UUID, String> associations) throws IOException {
+		File tempFile = new File(file.getPath() + ".tmp");
+
+		try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC);
+			header.put(VERSION);
+			header.flip();
+			writeFully(channel, header);
+
+			long written = writeRecords(channel, associations);
+			channel.force(true);
+			recordCount = written;
+		}
+
+		try {
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException | AccessDeniedException e) {
+			// Some file systems (and Windows in some cases) refuse the atomic replace, the temporary file is complete anyway
+			logger.fine("Atomic move not possible for " + file.getName() + " (" + e + "), using a normal move");
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		forceDirectory(); // Makes the rename itself survive a crash
+	}
+
+	/**
+	 * True if the file contains more than {@value #COMPACTION_RATIO} records for each association,
+	 * and at least {@value #MIN_GARBAGE_FOR_COMPACTION} of them are replaced.
+	 */
+	boolean needsCompaction(int associations) {
+		long garbage = recordCount - associations;
+		return recordCount > (long) associations * COMPACTION_RATIO && garbage >= MIN_GARBAGE_FOR_COMPACTION;
+	}
+
+
+	private long writeRecords(FileChannel channel, Map<UUID, String> records) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+		long written = 0;
+
+		for (Entry<UUID, String> entry : records.entrySet()) {
+			byte[] nameBytes = entry.getValue() != null ? entry.getValue().getBytes(StandardCharsets.UTF_8) : new byte[0];
+			if (nameBytes.length > MAX_NAME_LENGTH) {
+				logger.warning("Name too long for UUID " + entry.getKey() + ", not saved: " + entry.getValue());
+				continue;
+			}
+
+			if (buffer.remaining() < RECORD_HEADER_SIZE + nameBytes.length) {
+				buffer.flip();
+				writeFully(channel, buffer);
+				buffer.clear();
+			}
+
+			buffer.putLong(entry.getKey().getMostSignificantBits());
+			buffer.putLong(entry.getKey().getLeastSignificantBits());
+			buffer.put((byte) nameBytes.length);
+			buffer.put(nameBytes);
+			written++;
+		}
+
+		buffer.flip();
+		writeFully(channel, buffer);
+		return written;
+	}
+
+	/**
+	 * Makes the rename durable. Not supported on every platform, where it's skipped.
+	 */
+	private void forceDirectory() {
+		File directory = file.getAbsoluteFile().getParentFile();
+		try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// Directories can't be opened on Windows
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	private void checkHeader(ByteBuffer buffer) throws IOException {
+		if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+			throw new IOException("Invalid UUID registry file: " + file.getName());
+		}
+		byte version = buffer.get();
+		if (version != VERSION) {
+			throw new IOException("Unsupported UUID registry file version: " + version);
+		}
+	}
+
+
+	private static class Chunk {
+
+		private final int start;
+		private int records;
+
+		private Chunk(int start) {
+			this.start = start;
+		}
+
+	}
+
+}
@@ -66,6 +66,7 @@ public class WildCommonsPlugin extends JavaPlugin {
 	public static WildCommonsPlugin instance;
 	public static NmsManager nmsManager;
 	public static FileLogger mysqlErrorLogger;
+	public static FileLogger mysqlSlowLogger;
 	public static boolean disableWorldPlayerSave;
 	public static boolean serverInitialized;
 	
@@ -79,6 +80,7 @@ public class WildCommonsPlugin extends JavaPlugin {
 	public void onLoad() {
 		instance = this;
 		mysqlErrorLogger = new FileLogger(this, "mysql.error.log");
+		mysqlSlowLogger = new FileLogger(this, "mysql.slow.log");
 		
 		String version = Bukkit.getServer().getClass().getPackage().getName().split("\\.")[3];
 
@@ -130,6 +132,7 @@ public class WildCommonsPlugin extends JavaPlugin {
 			Bukkit.shutdown();
 			return;
 		}
+		PackageAccess.TextureFetcher_init();
 		
 		// Registra il comando
 		new WildCommonsCommand(this, "wildcommons");
@@ -163,6 +166,7 @@ public class WildCommonsPlugin extends JavaPlugin {
 	@Override
 	public void onDisable() {
 		PackageAccess.UUIDRegistry_save();
+		PackageAccess.TextureFetcher_save();
 	}
 	
 	public void loadTranslations() throws Exception {
@@ -35,6 +35,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.UUID;
 import java.util.logging.Level;
 
 import org.apache.commons.io.FileUtils;
@@ -59,8 +60,6 @@ import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.potion.PotionEffectType;
 import com.google.common.base.Joiner;
 import com.google.common.collect.Lists;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
 
 import wild.api.WildCommons;
 import wild.api.WildConstants;
@@ -69,6 +68,12 @@ import wild.api.command.SubCommandFramework;
 import wild.api.item.BookTutorial;
 import wild.api.item.CustomSkullAdapter;
 import wild.api.item.ItemBuilder;
+import wild.api.mysql.ConnectionPool;
+import wild.api.mysql.MySQL;
+import wild.api.mysql.QueryStats;
+import wild.api.uuid.APILimitException;
+import wild.api.uuid.ProfileNotFoundException;
+import wild.api.uuid.TextureFetcher;
 import wild.core.WildCommonsPermissions;
 import wild.core.WildCommonsPlugin;
 import wild.core.utils.GenericUtils;
@@ -113,31 +118,37 @@ public class WildCommonsCommand extends SubCommandFramework {
 	public void headSub(CommandSender sender, String label, String[] args) {
 		Player player = CommandValidate.getPlayerSender(sender);
 		
-		CustomSkullAdapter skullAdapter;
-		
 		if (args[0].length() == 36 || args[0].length() == 32) {
-			String uuid = args[0].replace("-", "");
-			
+			UUID uuid;
 			try {
-				JsonObject json = GenericUtils.readJsonElementFromURL("https://sessionserver.mojang.com/session/minecraft/profile/" + uuid).getAsJsonObject();
-				if (json.get("errorMessage") != null) {
-					throw new ExecuteException("Errore: " + json.get("errorMessage"));
-				}
-				
-				JsonArray properties = json.get("properties").getAsJsonArray();
-				String base64Texture = properties.iterator().next().getAsJsonObject().get("value").getAsString();
-
-				skullAdapter = CustomSkullAdapter.fromEncodedTexture(base64Texture);
-				
-			} catch (IOException e) {
-				e.printStackTrace();
-				throw new ExecuteException("Errore: " + e.getClass().getName());
+				uuid = UUID.fromString(args[0].length() == 36 ? args[0] : args[0].replaceFirst("(\\w{8})(\\w{4})(\\w{4})(\\w{4})(\\w{12})", "$1-$2-$3-$4-$5"));
+			} catch (IllegalArgumentException e) {
+				throw new ExecuteException("UUID non valido.");
 			}
+			
+			// La texture viene presa dalla cache se presente, altrimenti richiesta senza bloccare il server
+			TextureFetcher.fetchSkullAsync(WildCommonsPlugin.instance, uuid, skullAdapter -> {
+				if (player.isOnline()) {
+					giveHead(player, skullAdapter);
+				}
+			}, error -> {
+				if (error instanceof ProfileNotFoundException) {
+					sender.sendMessage(ChatColor.RED + "Nessuna skin trovata per l'UUID " + uuid + ".");
+				} else if (error instanceof APILimitException) {
+					sender.sendMessage(ChatColor.RED + "Limite richieste raggiunto, riprova più tardi.");
+				} else {
+					error.printStackTrace();
+					sender.sendMessage(ChatColor.RED + "Errore: " + error.getClass().getName());
+				}
+			});
+			
 		} else {
 			String textureUrl = "http://textures.minecraft.net/texture/" + args[0];
-			skullAdapter = CustomSkullAdapter.fromURL(textureUrl);
+			giveHead(player, CustomSkullAdapter.fromURL(textureUrl));
 		}
-
+	}
+	
+	private void giveHead(Player player, CustomSkullAdapter skullAdapter) {
 		ItemStack head = ItemBuilder.of(Material.SKULL_ITEM).durability(3).build();
 		SkullMeta headMeta = (SkullMeta) head.getItemMeta();
 		skullAdapter.apply(headMeta);
@@ -382,6 +393,43 @@ public class WildCommonsCommand extends SubCommandFramework {
 		}
 	}
 	
+	@SubCommand("mysql")
+	@SubCommandUsage("[numero query]")
+	public void mysqlSub(CommandSender sender, String label, String[] args) {
+		int limit = args.length > 0 ? CommandValidate.getPositiveIntegerNotZero(args[0]) : 5;
+		List<MySQL> instances = MySQL.getActiveInstances();
+		CommandValidate.isTrue(!instances.isEmpty(), "Non ci sono connessioni MySQL attive.");
+		
+		for (MySQL mysql : instances) {
+			QueryStats stats = mysql.getStats();
+			ConnectionPool pool = mysql.getPool();
+			
+			sender.sendMessage(ChatColor.DARK_GREEN + "MySQL " + mysql + ":");
+			if (pool != null) {
+				sender.sendMessage(ChatColor.GREEN + "Connessioni: " + pool.getActiveConnections() + " in uso, " + pool.getOpenConnections() + " aperte (max " + pool.getMaxSize() + "), "
+						+ "attesa media " + String.format("%.1f", pool.getAverageWaitMillis()) + " ms, timeout " + pool.getTotalTimeouts());
+			}
+			sender.sendMessage(ChatColor.GREEN + "Stato: " + mysql.getHealthState() + (mysql.getCircuitBreaker().getRetryDelay() > 0 ? ", nuovo tentativo tra " + mysql.getCircuitBreaker().getRetryDelay() + " ms" : ""));
+			sender.sendMessage(ChatColor.GREEN + "Query in corso: " + stats.getInFlight() + ", soglia query lente: " + stats.getSlowQueryThreshold() + " ms");
+			
+			List<QueryStats.TemplateStats> topTemplates = stats.getTopByTotalTime(limit);
+			if (topTemplates.isEmpty()) {
+				sender.sendMessage(ChatColor.GRAY + "Nessuna query eseguita.");
+				continue;
+			}
+			
+			for (QueryStats.TemplateStats template : topTemplates) {
+				long p99 = template.getPercentileUpperBoundMillis(99);
+				sender.sendMessage(ChatColor.YELLOW + String.format("%.0f", template.getTotalNanos() / 1_000_000.0) + " ms totali" + ChatColor.GRAY + " - "
+						+ template.getExecutions() + " esecuzioni, media " + String.format("%.1f", template.getAverageMillis()) + " ms, "
+						+ "p99 " + (p99 >= 0 ? "< " + p99 : "> " + (1L << (QueryStats.HISTOGRAM_BUCKETS - 2))) + " ms, "
+						+ "max " + String.format("%.0f", template.getMaxMillis()) + " ms, "
+						+ template.getRows() + " righe, " + template.getErrors() + " errori, " + template.getSlowExecutions() + " lente");
+				sender.sendMessage(ChatColor.WHITE + "  " + StringUtils.abbreviate(template.getTemplate(), 100));
+			}
+		}
+	}
+	
 	@SubCommand("lagtest")
 	@SubCommandUsage("[-bar]")
 	public void lagtestSub(CommandSender sender, String label, String[] args) {
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package wild.core.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpClient.Redirect;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * HTTP client shared by all the outbound requests of the library, for JSON APIs.<br>
+ * Connections are kept alive and reused, at most {@value #MAX_REQUESTS_PER_HOST} requests run at the same time for each host.
+ * Responses are parsed while they are read, on virtual threads, so the futures never block the caller.
+ */
+public class AsyncHttpClient {
+	
+	private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+	private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(8);
+	private static final int MAX_REQUESTS_PER_HOST = 4;
+	
+	private static final ExecutorService EXECUTOR = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("WildCommons HTTP ", 0).factory());
+	private static final HttpClient CLIENT = HttpClient.newBuilder()
+			.connectTimeout(CONNECT_TIMEOUT)
+			.followRedirects(Redirect.NORMAL)
+			.executor(EXECUTOR)
+			.build();
+	private static final Gson GSON = new Gson(); // Thread safe. JsonParser.parseReader() is missing in the Gson of old servers
+	
+	private static final Map<String, Semaphore> HOST_PERMITS = new ConcurrentHashMap<>();
+	
+	
+	public static CompletableFuture<JsonResponse> getJson(String url) {
+		return getJson(url, DEFAULT_TIMEOUT);
+	}
+	
+	/**
+	 * @param timeout maximum time to wait for the response, after the connection
+	 */
+	public static CompletableFuture<JsonResponse> getJson(String url, Duration timeout) {
+		HttpRequest.Builder request;
+		try {
+			request = newRequest(url, timeout).GET();
+		} catch (MalformedURLException e) {
+			return failedFuture(e);
+		}
+		return send(request.build());
+	}
+	
+	public static CompletableFuture<JsonResponse> postJson(String url, JsonElement body) {
+		return postJson(url, body, DEFAULT_TIMEOUT);
+	}
+	
+	public static CompletableFuture<JsonResponse> postJson(String url, JsonElement body, Duration timeout) {
+		HttpRequest.Builder request;
+		try {
+			request = newRequest(url, timeout)
+					.header("Content-Type", "application/json")
+					.POST(BodyPublishers.ofString(body.toString(), StandardCharsets.UTF_8));
+		} catch (MalformedURLException e) {
+			return failedFuture(e);
+		}
+		return send(request.build());
+	}
+	
+	private static HttpRequest.Builder newRequest(String url, Duration timeout) throws MalformedURLException {
+		try {
+			return HttpRequest.newBuilder(URI.create(url))
+					.header("User-Agent", "Minecraft")
+					.timeout(timeout);
+		} catch (IllegalArgumentException e) {
+			throw new MalformedURLException(url + ": " + e.getMessage());
+		}
+	}
+	
+	private static CompletableFuture<JsonResponse> send(HttpRequest request) {
+		Semaphore permits = HOST_PERMITS.computeIfAbsent(request.uri().getHost(), host -> new Semaphore(MAX_REQUESTS_PER_HOST));
+		
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				permits.acquire();
+				try {
+					HttpResponse<InputStream> response = CLIENT.send(request, BodyHandlers.ofInputStream());
+					
+					try (InputStream in = response.body()) {
+						JsonElement body = null;
+						JsonParseException parseError = null;
+						try {
+							body = parse(new InputStreamReader(in, StandardCharsets.UTF_8));
+						} catch (JsonParseException e) {
+							if (response.statusCode() / 100 == 2) {
+								throw e;
+							}
+							parseError = e; // Error pages are not always JSON
+						}
+						in.transferTo(OutputStream.nullOutputStream()); // The connection is reused only if the body was read completely
+						return new JsonResponse(response.statusCode(), body, parseError);
+					}
+				} finally {
+					permits.release();
+				}
+			} catch (IOException e) {
+				throw new CompletionException(e);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CompletionException(e);
+			}
+		}, EXECUTOR);
+	}
+	
+	private static JsonElement parse(Reader reader) {
+		JsonElement body = GSON.fromJson(reader, JsonElement.class);
+		return body == null || body.isJsonNull() ? null : body; // Null if the body is empty
+	}
+	
+	private static <T> CompletableFuture<T> failedFuture(Throwable error) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		future.completeExceptionally(error);
+		return future;
+	}
+	
+	
+	@Getter
+	@AllArgsConstructor
+	public static class JsonResponse {
+		
+		private final int statusCode;
+		private final JsonElement body; // Null if empty or not JSON
+		private final JsonParseException parseError; // Set if the body of an error response was not JSON
+		
+	}
+	
+}
@@ -28,45 +28,53 @@
 */
 package wild.core.utils;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
+import java.io.InterruptedIOException;
 import java.net.MalformedURLException;
 import java.net.SocketTimeoutException;
-import java.net.URL;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
 import org.bukkit.plugin.PluginDescriptionFile;
 
 import com.google.gson.JsonElement;
-import com.google.gson.JsonParser;
+import com.google.gson.JsonNull;
 
 import lombok.Cleanup;
+import wild.core.utils.AsyncHttpClient.JsonResponse;
 
 public class GenericUtils {
 	
+	/**
+	 * Blocking, use {@link AsyncHttpClient#getJson(String)} where possible.
+	 * Returns the response also in case of errors, {@link JsonNull} if empty.
+	 */
 	public static JsonElement readJsonElementFromURL(String url) throws IOException, MalformedURLException, SocketTimeoutException {
-		BufferedReader reader = null;
-		
 		try {
-			HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
-			connection.addRequestProperty("User-Agent", "Minecraft");
-			connection.setConnectTimeout(5000); //tempo massimo per connettersi al sito
-			connection.setReadTimeout(8000); //tempo massimo per leggere l'url
-			reader = new BufferedReader(new InputStreamReader(connection.getResponseCode() == 200 ? connection.getInputStream() : connection.getErrorStream()));
+			JsonResponse response = AsyncHttpClient.getJson(url).get();
+			if (response.getParseError() != null) {
+				throw response.getParseError(); // Like before, error responses are parsed too
+			}
+			return response.getBody() != null ? response.getBody() : JsonNull.INSTANCE;
 			
-			JsonParser parser = new JsonParser();
-			return parser.parse(reader);
-
-		} finally {
-			if (reader != null) {
-				reader.close();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null ? e.getCause().getCause() : e.getCause();
+			if (cause instanceof HttpTimeoutException) {
+				throw new SocketTimeoutException(cause.getMessage());
+			} else if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else {
+				throw new IOException(cause);
 			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
 		}
 	}
 	
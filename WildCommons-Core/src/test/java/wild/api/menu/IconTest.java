@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package wild.api.menu;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.junit.jupiter.api.Test;
+
+class IconTest {
+
+	@Test
+	void defaultIconIsCacheable() {
+		assertTrue(new Icon(Material.STONE).isRenderCacheable());
+	}
+
+	@Test
+	void subclassWithoutRenderingOverridesIsCacheable() {
+		Icon icon = new Icon(Material.STONE) {
+			
+			@SuppressWarnings("unused")
+			private int clicks;
+		};
+		assertTrue(icon.isRenderCacheable());
+	}
+
+	@Test
+	void dynamicNameIsNotCacheable() {
+		assertFalse(new DynamicNameIcon().isRenderCacheable());
+	}
+
+	@Test
+	void dynamicLoreIsNotCacheable() {
+		Icon icon = new Icon(Material.STONE) {
+			
+			@Override
+			protected List<String> calculateLore() {
+				return Collections.singletonList("Time: " + System.nanoTime());
+			}
+		};
+		assertFalse(icon.isRenderCacheable());
+	}
+
+	@Test
+	void overriddenItemstackIsNotCacheable() {
+		Icon icon = new Icon(Material.STONE) {
+			
+			@Override
+			public ItemStack createItemstack() {
+				return new ItemStack(Material.DIRT);
+			}
+		};
+		assertFalse(icon.isRenderCacheable());
+	}
+
+	@Test
+	void inheritedDynamicNameIsNotCacheable() {
+		Icon icon = new DynamicNameIcon() { };
+		assertFalse(icon.isRenderCacheable());
+	}
+
+	@Test
+	void metaModifierOrDisabledCacheIsNotCacheable() {
+		Icon modified = new Icon(Material.STONE);
+		modified.setMetaModifier(meta -> { });
+		assertFalse(modified.isRenderCacheable());
+
+		Icon disabled = new Icon(Material.STONE);
+		disabled.setRenderCache(false);
+		assertFalse(disabled.isRenderCacheable());
+	}
+
+
+	private static class DynamicNameIcon extends Icon {
+
+		private int counter;
+
+		private DynamicNameIcon() {
+			super(Material.STONE);
+		}
+
+		@Override
+		protected String calculateName() {
+			return "Counter: " + counter++;
+		}
+
+	}
+
+}
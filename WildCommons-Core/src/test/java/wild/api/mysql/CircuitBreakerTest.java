@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package wild.api.mysql;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+
+import org.bukkit.plugin.Plugin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import wild.api.mysql.CircuitBreaker.CircuitOpenException;
+import wild.api.mysql.CircuitBreaker.State;
+import wild.api.util.FileLogger;
+import wild.core.WildCommonsPlugin;
+
+class CircuitBreakerTest {
+
+	@TempDir File folder;
+
+	private CircuitBreaker circuitBreaker;
+
+	@BeforeEach
+	void setUp() {
+		Plugin plugin = (Plugin) Proxy.newProxyInstance(Plugin.class.getClassLoader(), new Class<?>[] { Plugin.class }, (proxy, method, args) -> null);
+		WildCommonsPlugin.mysqlErrorLogger = new FileLogger(plugin, new File(folder, "mysql.error.log"));
+
+		circuitBreaker = new CircuitBreaker("test");
+		circuitBreaker.setFailureThreshold(2);
+		circuitBreaker.setInitialBackoff(60_000);
+	}
+
+	@AfterEach
+	void tearDown() {
+		WildCommonsPlugin.mysqlErrorLogger = null;
+	}
+
+	@Test
+	void opensAfterThreshold() throws SQLException {
+		circuitBreaker.recordFailure(new SQLException("refused"));
+		assertEquals(State.CLOSED, circuitBreaker.getState());
+		assertEquals("ok", circuitBreaker.call(() -> "ok"));
+		assertEquals(0, circuitBreaker.getConsecutiveFailures());
+
+		circuitBreaker.recordFailure(new SQLException("refused"));
+		circuitBreaker.recordFailure(new SQLException("refused"));
+		assertEquals(State.OPEN, circuitBreaker.getState());
+		assertEquals(1, circuitBreaker.getTimesOpened());
+		assertTrue(circuitBreaker.getRetryDelay() > 0);
+	}
+
+	@Test
+	void openCircuitRejectsCalls() {
+		open();
+		assertThrows(CircuitOpenException.class, () -> circuitBreaker.call(() -> "never"));
+		assertEquals(1, circuitBreaker.getRejectedCalls());
+		assertEquals(State.OPEN, circuitBreaker.getState());
+	}
+
+	@Test
+	void successfulTrialCloses() throws SQLException {
+		circuitBreaker.setInitialBackoff(0);
+		open();
+
+		assertEquals("ok", circuitBreaker.call(() -> {
+			assertEquals(State.HALF_OPEN, circuitBreaker.getState());
+			// Only one trial at a time
+			assertThrows(CircuitOpenException.class, () -> circuitBreaker.call(() -> "concurrent"));
+			return "ok";
+		}));
+		assertEquals(State.CLOSED, circuitBreaker.getState());
+		assertEquals(0, circuitBreaker.getConsecutiveFailures());
+	}
+
+	@Test
+	void failedTrialOpensAgain() {
+		circuitBreaker.setInitialBackoff(0);
+		open();
+
+		SQLException failure = new SQLException("still refused");
+		assertThrows(SQLException.class, () -> circuitBreaker.call(() -> {
+			circuitBreaker.recordFailure(failure);
+			throw failure;
+		}));
+		assertEquals(State.OPEN, circuitBreaker.getState());
+		assertEquals(2, circuitBreaker.getTimesOpened());
+	}
+
+	@Test
+	void trialEndedByErrorReturnsToOpen() {
+		circuitBreaker.setInitialBackoff(0);
+		open();
+
+		assertThrows(OutOfMemoryError.class, () -> circuitBreaker.call(() -> {
+			throw new OutOfMemoryError("test");
+		}));
+		assertEquals(State.OPEN, circuitBreaker.getState());
+		assertTrue(circuitBreaker.isAvailable());
+	}
+
+	@Test
+	void otherExceptionsDontOpen() {
+		assertThrows(SQLException.class, () -> circuitBreaker.call(() -> {
+			throw new SQLException("pool exhausted");
+		}));
+		assertEquals(State.CLOSED, circuitBreaker.getState());
+		assertEquals(0, circuitBreaker.getConsecutiveFailures());
+	}
+
+
+	private void open() {
+		for (int i = 0; i < circuitBreaker.getFailureThreshold(); i++) {
+			circuitBreaker.recordFailure(new SQLException("refused"));
+		}
+		assertEquals(State.OPEN, circuitBreaker.getState());
+	}
+
+}
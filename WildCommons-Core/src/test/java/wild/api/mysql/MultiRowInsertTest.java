@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package wild.api.mysql;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+class MultiRowInsertTest {
+
+	@Test
+	void buildRepeatsValuesGroup() {
+		MultiRowInsert insert = MultiRowInsert.parse("INSERT INTO stats (player, kills) VALUES (?, ?)");
+		assertNotNull(insert);
+		assertEquals(2, insert.getPlaceholdersPerRow());
+		assertEquals("INSERT INTO stats (player, kills) VALUES (?, ?)", insert.build(1));
+		assertEquals("INSERT INTO stats (player, kills) VALUES (?, ?),(?, ?),(?, ?)", insert.build(3));
+	}
+
+	@Test
+	void buildKeepsTail() {
+		MultiRowInsert insert = MultiRowInsert.parse("  insert into stats (player, kills) values (?, ?) ON DUPLICATE KEY UPDATE kills = kills + VALUES(kills)  ");
+		assertNotNull(insert);
+		assertEquals("insert into stats (player, kills) values (?, ?),(?, ?) ON DUPLICATE KEY UPDATE kills = kills + VALUES(kills)", insert.build(2));
+	}
+
+	@Test
+	void nestedParenthesesAndQuotes() {
+		MultiRowInsert insert = MultiRowInsert.parse("REPLACE INTO `values` (name, date) VALUES (?, NOW(), ')')");
+		assertNotNull(insert);
+		assertEquals(1, insert.getPlaceholdersPerRow());
+		assertEquals("REPLACE INTO `values` (name, date) VALUES (?, NOW(), ')'),(?, NOW(), ')')", insert.build(2));
+	}
+
+	@Test
+	void keywordInsideIdentifiers() {
+		MultiRowInsert insert = MultiRowInsert.parse("INSERT INTO old_values (player, values_count, $values) VALUES (?, ?, ?)");
+		assertNotNull(insert);
+		assertEquals(3, insert.getPlaceholdersPerRow());
+		assertEquals("INSERT INTO old_values (player, values_count, $values) VALUES (?, ?, ?),(?, ?, ?)", insert.build(2));
+	}
+
+	@Test
+	void unsupportedStatements() {
+		assertNull(MultiRowInsert.parse("SELECT * FROM stats WHERE player = ?"));
+		assertNull(MultiRowInsert.parse("UPDATE stats SET kills = ? WHERE player = ?"));
+		assertNull(MultiRowInsert.parse("INSERT INTO stats SELECT * FROM old_stats"));
+		assertNull(MultiRowInsert.parse("INSERT INTO stats (player) VALUES ('Steve')"));
+		assertNull(MultiRowInsert.parse("INSERT INTO stats (player, kills) VALUES (?, 0) ON DUPLICATE KEY UPDATE kills = ?"));
+		assertNull(MultiRowInsert.parse("INSERT INTO stats (player) VALUES (?), (?)"));
+	}
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package wild.api.mysql;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import org.junit.jupiter.api.Test;
+
+import wild.api.mysql.QueryCache.CacheKey;
+
+class QueryCacheTest {
+
+	private static final String SQL = "SELECT * FROM players WHERE clan = ? AND level > ?";
+	private static final RowMapper<String> MAPPER = row -> row.getString(1);
+
+	@Test
+	void sameParametersShareTheKey() {
+		assertEquals(new CacheKey(SQL, MAPPER, new Object[] {"red", 5}), new CacheKey(SQL, MAPPER, new Object[] {"red", 5}));
+		assertEquals(new CacheKey(SQL, MAPPER, new Object[] {"red", 5}).hashCode(), new CacheKey(SQL, MAPPER, new Object[] {"red", 5}).hashCode());
+		assertNotEquals(new CacheKey(SQL, MAPPER, new Object[] {"red", 5}), new CacheKey(SQL, MAPPER, new Object[] {"red", 6}));
+	}
+
+	@Test
+	void nullableParametersAreComparedByValue() {
+		CacheKey key = new CacheKey(SQL, MAPPER, new Object[] {Nullable.of(String.class, null), 5});
+
+		assertEquals(key, new CacheKey(SQL, MAPPER, new Object[] {Nullable.of(String.class, null), 5}));
+		assertEquals(key.hashCode(), new CacheKey(SQL, MAPPER, new Object[] {Nullable.of(String.class, null), 5}).hashCode());
+		assertNotEquals(key, new CacheKey(SQL, MAPPER, new Object[] {Nullable.of(Integer.class, null), 5}));
+		assertNotEquals(key, new CacheKey(SQL, MAPPER, new Object[] {Nullable.of(String.class, "red"), 5}));
+	}
+
+	@Test
+	void parametersAreCopied() {
+		Object[] parameters = {"red", 5};
+		CacheKey key = new CacheKey(SQL, MAPPER, parameters);
+		parameters[0] = "blue";
+
+		assertEquals(new CacheKey(SQL, MAPPER, new Object[] {"red", 5}), key);
+	}
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package wild.api.mysql;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import wild.api.mysql.QueryStats.TemplateStats;
+
+class QueryStatsTest {
+
+	@Test
+	void literalsAreReplaced() {
+		assertEquals("SELECT * FROM players WHERE id = ? AND name = ?", QueryStats.toTemplate("SELECT * FROM players WHERE id = 15 AND name = 'Steve'"));
+		assertEquals("UPDATE stats SET ratio = ?, title = ?", QueryStats.toTemplate("UPDATE stats SET ratio = 3.14, title = \"The \\\"best\\\"\""));
+		assertEquals("INSERT INTO t VALUES (?, ?, ?)", QueryStats.toTemplate("INSERT INTO t VALUES ('it\\'s', 1, ?)"));
+	}
+
+	@Test
+	void identifiersWithDigitsAreKept() {
+		assertEquals("SELECT col_2, `table1`.x FROM table1 WHERE v2 = ?", QueryStats.toTemplate("SELECT col_2, `table1`.x FROM table1 WHERE v2 = 7"));
+	}
+
+	@Test
+	void whitespaceIsCollapsed() {
+		assertEquals("SELECT * FROM t WHERE a = ?", QueryStats.toTemplate("  SELECT *\n\tFROM t   WHERE a = 1 \n"));
+	}
+
+	@Test
+	void sameTemplateIsGrouped() {
+		QueryStats stats = new QueryStats(0);
+		stats.start("SELECT * FROM t WHERE id = 1").finish(1, false);
+		stats.start("SELECT *  FROM t WHERE id = 2").finish(1, false);
+
+		assertEquals(1, stats.getTemplates().size());
+		TemplateStats template = stats.getTemplates().iterator().next();
+		assertEquals("SELECT * FROM t WHERE id = ?", template.getTemplate());
+		assertEquals(2, template.getExecutions());
+		assertEquals(2, template.getRows());
+		assertEquals(0, stats.getInFlight());
+	}
+
+	@Test
+	void failuresAreNotLatencySamples() {
+		QueryStats stats = new QueryStats(0);
+		stats.start("DELETE FROM t WHERE id = 1").finish(0, true);
+
+		TemplateStats template = stats.getTemplates().iterator().next();
+		assertEquals(1, template.getErrors());
+		assertEquals(0, template.getExecutions());
+		assertEquals(0, template.getTotalNanos());
+		assertEquals(0, template.getInFlight());
+	}
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package wild.api.uuid;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class MojangRateLimiterTest {
+
+	@Test
+	void availableTokensAreGrantedImmediately() {
+		MojangRateLimiter limiter = new MojangRateLimiter(3, TimeUnit.HOURS.toMillis(1), 0);
+		for (int i = 0; i < 3; i++) {
+			assertTrue(limiter.acquire(RequestPriority.INTERACTIVE).isDone());
+		}
+		assertFalse(limiter.acquire(RequestPriority.INTERACTIVE).isDone());
+		assertEquals(1, limiter.getWaitingRequests());
+	}
+
+	@Test
+	void interactiveBeforeBackgroundThenInOrder() throws Exception {
+		MojangRateLimiter limiter = new MojangRateLimiter(1, 50, 0);
+		assertTrue(limiter.acquire(RequestPriority.INTERACTIVE).isDone());
+
+		List<String> granted = new CopyOnWriteArrayList<>();
+		CompletableFuture<?>[] futures = {
+				request(limiter, RequestPriority.BACKGROUND, "background 1", granted),
+				request(limiter, RequestPriority.INTERACTIVE, "interactive 1", granted),
+				request(limiter, RequestPriority.BACKGROUND, "background 2", granted),
+				request(limiter, RequestPriority.INTERACTIVE, "interactive 2", granted)
+		};
+		CompletableFuture.allOf(futures).get(5, TimeUnit.SECONDS);
+
+		assertEquals(Arrays.asList("interactive 1", "interactive 2", "background 1", "background 2"), granted);
+	}
+
+	@Test
+	void backgroundCantUseReserve() {
+		MojangRateLimiter limiter = new MojangRateLimiter(2, TimeUnit.HOURS.toMillis(1), 1);
+		assertTrue(limiter.acquire(RequestPriority.BACKGROUND).isDone());
+		assertFalse(limiter.acquire(RequestPriority.BACKGROUND).isDone());
+		assertTrue(limiter.acquire(RequestPriority.INTERACTIVE).isDone());
+	}
+
+	@Test
+	void backgroundFailsWhenTooManyWaiting() {
+		MojangRateLimiter limiter = new MojangRateLimiter(1, TimeUnit.HOURS.toMillis(1), 0, 2);
+		assertTrue(limiter.acquire(RequestPriority.BACKGROUND).isDone());
+		assertFalse(limiter.acquire(RequestPriority.BACKGROUND).isDone());
+		assertFalse(limiter.acquire(RequestPriority.BACKGROUND).isDone());
+
+		CompletableFuture<Void> rejected = limiter.acquire(RequestPriority.BACKGROUND);
+		assertTrue(rejected.isCompletedExceptionally());
+		CompletionException error = assertThrows(CompletionException.class, rejected::join);
+		assertInstanceOf(APILimitException.class, error.getCause());
+
+		// Interactive requests still wait
+		assertFalse(limiter.acquire(RequestPriority.INTERACTIVE).isCompletedExceptionally());
+		assertEquals(3, limiter.getWaitingRequests());
+	}
+
+	@Test
+	void nothingIsGrantedWhilePaused() {
+		MojangRateLimiter limiter = new MojangRateLimiter(10, 1, 0);
+		limiter.limitReached(TimeUnit.HOURS.toMillis(1));
+		assertFalse(limiter.acquire(RequestPriority.INTERACTIVE).isDone());
+	}
+
+
+	private static CompletableFuture<Void> request(MojangRateLimiter limiter, RequestPriority priority, String name, List<String> granted) {
+		return limiter.acquire(priority).thenRun(() -> granted.add(name));
+	}
+
+}
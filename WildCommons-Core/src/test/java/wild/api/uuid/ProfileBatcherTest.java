@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package wild.api.uuid;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import wild.api.uuid.StubHttpServer.Response;
+
+class ProfileBatcherTest {
+
+	private StubHttpServer server;
+	private ProfileBatcher batcher;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		// Like Mojang: names are matched ignoring case and returned with their real case, unknown names are left out
+		server = new StubHttpServer(request -> {
+			JsonArray profiles = new JsonArray();
+			for (JsonElement name : new JsonParser().parse(request.body).getAsJsonArray()) {
+				if (!name.getAsString().toLowerCase(Locale.ROOT).startsWith("unknown")) {
+					JsonObject profile = new JsonObject();
+					profile.addProperty("id", uuidOf(name.getAsString()).toString().replace("-", ""));
+					profile.addProperty("name", name.getAsString().toUpperCase(Locale.ROOT));
+					profiles.add(profile);
+				}
+			}
+			return new Response(200, profiles.toString());
+		});
+		batcher = new ProfileBatcher(server.url("/profiles/minecraft"), 50, new MojangRateLimiter());
+	}
+
+	@AfterEach
+	void tearDown() {
+		server.close();
+	}
+
+	@Test
+	void lookupsAreSplitInRequestsOfTenNames() throws Exception {
+		List<String> names = new ArrayList<>();
+		List<CompletableFuture<UUID>> futures = new ArrayList<>();
+		for (int i = 0; i < 25; i++) {
+			names.add("Player" + i);
+			futures.add(batcher.lookup("Player" + i, RequestPriority.BACKGROUND));
+		}
+
+		for (int i = 0; i < names.size(); i++) {
+			assertEquals(uuidOf(names.get(i)), futures.get(i).get(5, TimeUnit.SECONDS));
+		}
+		List<Integer> requestSizes = new ArrayList<>();
+		for (StubHttpServer.Request request : server.getRequests()) {
+			requestSizes.add(new JsonParser().parse(request.body).getAsJsonArray().size());
+		}
+		requestSizes.sort(null);
+		assertEquals(List.of(5, 10, 10), requestSizes);
+	}
+
+	@Test
+	void namesAreMatchedIgnoringCase() throws Exception {
+		CompletableFuture<UUID> lower = batcher.lookup("notch", RequestPriority.BACKGROUND);
+		CompletableFuture<UUID> upper = batcher.lookup("NOTCH", RequestPriority.INTERACTIVE);
+
+		assertSame(lower, upper); // Same pending lookup
+		assertEquals(uuidOf("notch"), lower.get(5, TimeUnit.SECONDS));
+		assertEquals(1, server.getRequests().size());
+		assertEquals("[\"notch\"]", server.getRequests().get(0).body);
+	}
+
+	@Test
+	void unknownNamesFail() throws Exception {
+		CompletableFuture<UUID> known = batcher.lookup("Steve", RequestPriority.INTERACTIVE);
+		CompletableFuture<UUID> unknown = batcher.lookup("Unknown1", RequestPriority.INTERACTIVE);
+
+		assertEquals(uuidOf("Steve"), known.get(5, TimeUnit.SECONDS));
+		assertInstanceOf(ProfileNotFoundException.class, failure(unknown));
+		assertEquals(1, server.getRequests().size());
+	}
+
+	@Test
+	void noContentMeansNotFound() throws Exception {
+		server.setHandler(request -> new Response(204, null));
+		assertInstanceOf(ProfileNotFoundException.class, failure(batcher.lookup("Steve", RequestPriority.INTERACTIVE)));
+
+		server.setHandler(request -> new Response(200, null));
+		assertInstanceOf(ProfileNotFoundException.class, failure(batcher.lookup("Alex", RequestPriority.INTERACTIVE)));
+	}
+
+	@Test
+	void rateLimitedRequestsFail() throws Exception {
+		server.setHandler(request -> new Response(429, "{\"error\":\"TooManyRequestsException\"}"));
+		assertInstanceOf(APILimitException.class, failure(batcher.lookup("Steve", RequestPriority.INTERACTIVE)));
+	}
+
+	@Test
+	void invalidNamesAreNotSent() throws Exception {
+		assertInstanceOf(ProfileNotFoundException.class, failure(batcher.lookup("not a name", RequestPriority.INTERACTIVE)));
+		assertTrue(server.getRequests().isEmpty());
+	}
+
+
+	private static UUID uuidOf(String name) {
+		return UUID.nameUUIDFromBytes(name.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static Throwable failure(CompletableFuture<?> future) throws Exception {
+		try {
+			future.get(5, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			return e.getCause();
+		}
+		throw new AssertionError("The lookup didn't fail");
+	}
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package wild.api.uuid;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP server that replaces the Mojang API in tests. Every request is recorded, the handler decides the response.
+ */
+class StubHttpServer implements AutoCloseable {
+
+	private final HttpServer server;
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+	private final List<Request> requests = new CopyOnWriteArrayList<>();
+	private volatile Handler handler;
+
+
+	StubHttpServer(Handler handler) throws IOException {
+		this.handler = handler;
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/", this::handle);
+		server.setExecutor(executor);
+		server.start();
+	}
+
+
+	String url(String path) {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+	}
+
+	List<Request> getRequests() {
+		return requests;
+	}
+
+	void setHandler(Handler handler) {
+		this.handler = handler;
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			String body;
+			try (InputStream in = exchange.getRequestBody()) {
+				body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+			}
+			Request request = new Request(exchange.getRequestURI().getPath(), body);
+			requests.add(request);
+
+			Response response = handler.handle(request);
+			byte[] responseBody = response.body != null ? response.body.getBytes(StandardCharsets.UTF_8) : new byte[0];
+			exchange.getResponseHeaders().set("Content-Type", "application/json");
+			exchange.sendResponseHeaders(response.statusCode, responseBody.length > 0 ? responseBody.length : -1);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(responseBody);
+			}
+		} catch (Exception e) {
+			exchange.sendResponseHeaders(500, -1);
+		} finally {
+			exchange.close();
+		}
+	}
+
+
+	interface Handler {
+
+		public Response handle(Request request) throws Exception;
+
+	}
+
+
+	static class Request {
+
+		final String path;
+		final String body;
+
+		private Request(String path, String body) {
+			this.path = path;
+			this.body = body;
+		}
+
+	}
+
+
+	static class Response {
+
+		final int statusCode;
+		final String body; // Null for no content
+
+		Response(int statusCode, String body) {
+			this.statusCode = statusCode;
+			this.body = body;
+		}
+
+	}
+
+}
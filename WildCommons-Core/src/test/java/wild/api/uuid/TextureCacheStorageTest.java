@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package wild.api.uuid;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TextureCacheStorageTest {
+
+	@TempDir File folder;
+
+	@Test
+	void savedTexturesAreLoaded() throws IOException {
+		TextureCacheStorage storage = new TextureCacheStorage(new File(folder, "skull-textures.dat"));
+		Map<UUID, TextureData> textures = new LinkedHashMap<>();
+		textures.put(UUID.randomUUID(), new TextureData("dGV4dHVyZTE=", 1000));
+		textures.put(UUID.randomUUID(), new TextureData("dGV4dHVyZTI=", 2000));
+
+		storage.save(textures);
+		storage.save(textures); // Replaces the existing file
+		assertFalse(new File(folder, "skull-textures.dat.tmp").exists());
+
+		Map<UUID, TextureData> loaded = new LinkedHashMap<>();
+		new TextureCacheStorage(storage.getFile()).load((uuid, texture, fetchTimestamp) -> {
+			loaded.put(uuid, new TextureData(texture, fetchTimestamp));
+		});
+
+		assertEquals(textures.keySet(), loaded.keySet());
+		for (UUID uuid : textures.keySet()) {
+			assertEquals(textures.get(uuid).getTexture(), loaded.get(uuid).getTexture());
+			assertEquals(textures.get(uuid).getFetchTimestamp(), loaded.get(uuid).getFetchTimestamp());
+		}
+	}
+
+}
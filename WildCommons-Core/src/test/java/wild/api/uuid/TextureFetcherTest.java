@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package wild.api.uuid;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.cache.CacheStats;
+
+import wild.api.uuid.StubHttpServer.Response;
+
+class TextureFetcherTest {
+
+	private StubHttpServer server;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		server = new StubHttpServer(request -> new Response(200, profile(request.path.substring(request.path.lastIndexOf('/') + 1))));
+		TextureFetcher.profileUrl = server.url("/session/minecraft/profile/");
+	}
+
+	@AfterEach
+	void tearDown() {
+		TextureFetcher.profileUrl = TextureFetcher.DEFAULT_PROFILE_URL;
+		server.close();
+	}
+
+	@Test
+	void texturesAreCached() throws Exception {
+		UUID uuid = UUID.randomUUID(); // The cache is static, each test uses its own UUIDs
+		CacheStats before = TextureFetcher.getCacheStats();
+
+		assertEquals(texture(uuid), TextureFetcher.fetchTextureAsync(uuid).get(5, TimeUnit.SECONDS));
+		assertEquals(texture(uuid), TextureFetcher.fetchTextureAsync(uuid).get(5, TimeUnit.SECONDS));
+
+		CacheStats stats = TextureFetcher.getCacheStats().minus(before);
+		assertEquals(1, stats.missCount());
+		assertEquals(1, stats.hitCount());
+		assertEquals(1, server.getRequests().size());
+		assertEquals(texture(uuid), TextureFetcher.getCachedTexture(uuid));
+	}
+
+	@Test
+	void concurrentLookupsShareTheRequest() throws Exception {
+		UUID uuid = UUID.randomUUID();
+		CountDownLatch release = new CountDownLatch(1);
+		server.setHandler(request -> {
+			release.await(5, TimeUnit.SECONDS);
+			return new Response(200, profile(uuid.toString().replace("-", "")));
+		});
+
+		CompletableFuture<String> first = TextureFetcher.fetchTextureAsync(uuid, RequestPriority.INTERACTIVE);
+		CompletableFuture<String> second = TextureFetcher.fetchTextureAsync(uuid, RequestPriority.BACKGROUND);
+		assertSame(first, second);
+		release.countDown();
+
+		assertEquals(texture(uuid), second.get(5, TimeUnit.SECONDS));
+		assertEquals(1, server.getRequests().size());
+	}
+
+	@Test
+	void missingProfilesAreCachedAsNotFound() throws Exception {
+		UUID missing = UUID.randomUUID();
+		UUID empty = UUID.randomUUID();
+		server.setHandler(request -> request.path.endsWith(undashed(missing)) ? new Response(204, null) : new Response(200, null));
+
+		assertInstanceOf(ProfileNotFoundException.class, failure(TextureFetcher.fetchTextureAsync(missing)));
+		assertInstanceOf(ProfileNotFoundException.class, failure(TextureFetcher.fetchTextureAsync(empty)));
+
+		// Answered by the cache
+		assertInstanceOf(ProfileNotFoundException.class, failure(TextureFetcher.fetchTextureAsync(missing)));
+		assertEquals(2, server.getRequests().size());
+	}
+
+
+	private static String profile(String undashedUUID) {
+		return "{\"id\":\"" + undashedUUID + "\",\"name\":\"Steve\",\"properties\":[{\"name\":\"textures\",\"value\":\"" + texture(undashedUUID) + "\"}]}";
+	}
+
+	private static String texture(UUID uuid) {
+		return texture(undashed(uuid));
+	}
+
+	private static String texture(String undashedUUID) {
+		return "dGV4dHVyZQ" + undashedUUID;
+	}
+
+	private static String undashed(UUID uuid) {
+		return uuid.toString().replace("-", "");
+	}
+
+	private static Throwable failure(CompletableFuture<?> future) throws Exception {
+		try {
+			future.get(5, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			return e.getCause();
+		}
+		throw new AssertionError("The lookup didn't fail");
+	}
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2020, Wild Adventure
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 4. Redistribution of this software in source or binary forms shall be free
+ *    of all charges or fees to the recipient of this software.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package wild.api.uuid;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class UUIDRegistryStorageTest {
+
+	private static final UUID STEVE = UUID.fromString("8667ba71-b85a-4004-af54-457a9734eed7");
+	private static final UUID ALEX = UUID.fromString("ec561538-f3fd-461d-aff5-086b22154bce");
+	private static final UUID NOTCH = UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5");
+
+	@TempDir File folder;
+
+	private File file;
+	private Logger logger;
+
+	@BeforeEach
+	void setUp() {
+		file = new File(folder, "uuids.dat");
+		logger = Logger.getLogger(UUIDRegistryStorageTest.class.getName());
+	}
+
+	@Test
+	void newFileIsCreated() throws IOException {
+		UUIDRegistryStorage storage = new UUIDRegistryStorage(file, logger);
+		assertTrue(storage.load().isEmpty());
+		assertTrue(storage.exists());
+		assertEquals(0, storage.getRecordCount());
+	}
+
+	@Test
+	void lastRecordWins() throws IOException {
+		UUIDRegistryStorage storage = new UUIDRegistryStorage(file, logger);
+		storage.load();
+		storage.append(associations(STEVE, "Steve", ALEX, "Alex", NOTCH, "Notch"));
+		storage.append(associations(STEVE, "Steve2", ALEX, null));
+
+		assertEquals(associations(STEVE, "Steve2", NOTCH, "Notch"), new UUIDRegistryStorage(file, logger).load());
+	}
+
+	@Test
+	void tornTailIsDiscarded() throws IOException {
+		UUIDRegistryStorage storage = new UUIDRegistryStorage(file, logger);
+		storage.load();
+		storage.append(associations(STEVE, "Steve"));
+		long validLength = file.length();
+		storage.append(associations(ALEX, "Alex"));
+
+		// Interrupted write: the last record is missing some bytes of the name
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(file.length() - 2);
+		}
+
+		UUIDRegistryStorage reloaded = new UUIDRegistryStorage(file, logger);
+		assertEquals(associations(STEVE, "Steve"), reloaded.load());
+		assertEquals(1, reloaded.getRecordCount());
+		assertEquals(validLength, file.length());
+
+		// New records are appended after the valid ones
+		reloaded.append(associations(NOTCH, "Notch"));
+		assertEquals(associations(STEVE, "Steve", NOTCH, "Notch"), new UUIDRegistryStorage(file, logger).load());
+	}
+
+	@Test
+	void failedAppendIsRolledBack() throws IOException {
+		UUIDRegistryStorage storage = new UUIDRegistryStorage(file, logger);
+		storage.load();
+		storage.append(associations(STEVE, "Steve"));
+		long validLength = file.length();
+
+		// Fails after the first buffers were written to the file
+		Map<UUID, String> failingChanges = new LinkedHashMap<>();
+		for (int i = 0; i < 10_000; i++) {
+			failingChanges.put(UUID.randomUUID(), "Player" + i);
+		}
+		failingChanges.put(null, "Broken");
+		assertThrows(NullPointerException.class, () -> storage.append(failingChanges));
+		assertEquals(validLength, file.length());
+		assertEquals(1, storage.getRecordCount());
+
+		// The next save appends right after the valid records
+		storage.append(associations(ALEX, "Alex"));
+		storage.append(associations(NOTCH, "Notch"));
+		assertEquals(associations(STEVE, "Steve", ALEX, "Alex", NOTCH, "Notch"), new UUIDRegistryStorage(file, logger).load());
+	}
+
+	@Test
+	void compactionKeepsOnlyCurrentAssociations() throws IOException {
+		UUIDRegistryStorage storage = new UUIDRegistryStorage(file, logger);
+		storage.load();
+		for (int i = 0; i < 1500; i++) {
+			storage.append(associations(STEVE, "Steve" + i));
+		}
+		storage.append(associations(ALEX, "Alex"));
+		assertEquals(1501, storage.getRecordCount());
+		assertTrue(storage.needsCompaction(2));
+
+		Map<UUID, String> current = storage.load();
+		assertEquals(associations(STEVE, "Steve1499", ALEX, "Alex"), current);
+		long sizeBefore = file.length();
+
+		storage.compact(current);
+		assertEquals(2, storage.getRecordCount());
+		assertFalse(storage.needsCompaction(2));
+		assertTrue(file.length() < sizeBefore);
+		assertFalse(new File(file.getPath() + ".tmp").exists());
+
+		UUIDRegistryStorage reloaded = new UUIDRegistryStorage(file, logger);
+		assertEquals(current, reloaded.load());
+		assertEquals(2, reloaded.getRecordCount());
+	}
+
+	@Test
+	void fewReplacedRecordsDontNeedCompaction() throws IOException {
+		UUIDRegistryStorage storage = new UUIDRegistryStorage(file, logger);
+		storage.load();
+		for (int i = 0; i < 10; i++) {
+			storage.append(associations(STEVE, "Steve" + i));
+		}
+		assertFalse(storage.needsCompaction(1));
+	}
+
+
+	private static Map<UUID, String> associations(Object... uuidsAndNames) {
+		Map<UUID, String> associations = new LinkedHashMap<>();
+		for (int i = 0; i < uuidsAndNames.length; i += 2) {
+			associations.put((UUID) uuidsAndNames[i], (String) uuidsAndNames[i + 1]);
+		}
+		return associations;
+	}
+
+}